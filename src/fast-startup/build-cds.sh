@@ -0,0 +1,65 @@
+#!/usr/bin/env bash
+# Prepares the fast-startup layout of the application and trains its class data sharing (CDS) archive.
+#
+#   src/fast-startup/build-cds.sh target/flowcrmtutorial-1.0-SNAPSHOT.jar [target/fast-startup]
+#
+# Run by "mvn -Pproduction,fast-startup package". The jar must be AOT-processed (the fast-startup profile does it).
+# CDS can't archive classes of the jars nested in a Spring Boot jar, so the jar is extracted into app.jar
+# (the application classes) and lib/ (the dependencies). The training run starts the application with the prod
+# profile on an in-memory database with the demo data and the demo users, logs in and opens the contact list, then
+# stops. Every class loaded on the way ends up in app.jsa. Start the result with src/fast-startup/run.sh.
+set -euo pipefail
+
+JAR=$(cd "$(dirname "${1:?usage: build-cds.sh <application jar> [output directory]}")" && pwd)/$(basename "$1")
+OUT=${2:-target/fast-startup}
+PORT=${TRAINING_PORT:-18080}
+
+rm -rf "$OUT"
+mkdir -p "$OUT/extracted"
+OUT=$(cd "$OUT" && pwd)
+(cd "$OUT/extracted" && jar -xf "$JAR")
+mv "$OUT/extracted/BOOT-INF/lib" "$OUT/lib"
+jar --create --file "$OUT/app.jar" -C "$OUT/extracted/BOOT-INF/classes" .
+rm -rf "$OUT/extracted"
+# The archive is only used with exactly the class path it was created with, in the same order.
+(cd "$OUT" && { echo -n "app.jar:"; ls lib/*.jar | sort | paste -sd: -; } > classpath)
+
+cd "$OUT"
+echo "Training the CDS archive on port $PORT"
+java -XX:ArchiveClassesAtExit=app.jsa -Dspring.aot.enabled=true -cp "$(cat classpath)" \
+    tech.hidetora.application.Application \
+    --spring.profiles.active=prod \
+    --server.port="$PORT" \
+    --spring.datasource.url=jdbc:h2:mem:cds-training \
+    --spring.flyway.locations=classpath:db/migration,classpath:db/demo \
+    --crm.security.demo-users=true \
+    > training.log 2>&1 &
+APP=$!
+trap 'kill $APP 2>/dev/null || true' EXIT
+
+for _ in $(seq 1 120); do
+    if curl -fs "http://localhost:$PORT/actuator/health" > /dev/null; then
+        break
+    fi
+    sleep 1
+done
+
+# A representative first visit: the login page, the login, and the contact list.
+COOKIES=$(mktemp)
+curl -fs -c "$COOKIES" -b "$COOKIES" "http://localhost:$PORT/login" > /dev/null
+# Like LoadTest.login: a successful login redirects, a failed one redirects to /login?error.
+LOGIN=$(curl -s -c "$COOKIES" -b "$COOKIES" -o /dev/null -w '%{http_code} %{redirect_url}' \
+    --data-urlencode "username=user" --data-urlencode "password=password" "http://localhost:$PORT/login")
+if [[ "$LOGIN" != 302\ * || "$LOGIN" == *error* ]]; then
+    echo "The training login failed ($LOGIN), the archive would miss the contact list, see training.log" >&2
+    exit 1
+fi
+curl -fs -c "$COOKIES" -b "$COOKIES" "http://localhost:$PORT/" > /dev/null
+curl -fs -c "$COOKIES" -b "$COOKIES" "http://localhost:$PORT/?v-r=init&location=&query=" > /dev/null
+rm -f "$COOKIES"
+
+# The archive is written when the JVM exits.
+kill -TERM $APP
+wait $APP || true
+trap - EXIT
+ls -l app.jsa
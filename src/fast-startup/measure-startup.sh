@@ -0,0 +1,67 @@
+#!/usr/bin/env bash
+# Compares the startup time of the fast-startup build with the application as it starts today:
+#
+#   ./mvnw clean package -Pproduction,fast-startup
+#   src/fast-startup/measure-startup.sh [runs] [jar] [fast-startup directory]
+#
+# Each variant starts once to warm up the file system cache, then RUNS times (default 5), always with
+# crm.startup.exit-after-ready. The "Ready to accept traffic in ... ms" line of StartupReport, counted from the
+# start of the JVM, gives the minimum, median and maximum of every variant:
+#   today        java -jar, default profile: Hibernate creates the schema, data.sql seeds the demo data
+#   prod         java -jar, prod profile: Flyway schema, no seeding, statistics loaded lazily
+#   prod+aot     extracted class path with the AOT-generated bean definitions
+#   prod+aot+cds the same with the CDS archive (-Xshare:on: fails instead of starting without it)
+# The jar of the fast-startup build is AOT-processed, but java -jar ignores the generated code, so "today" is the
+# startup as before. Run it on an otherwise idle machine, and quote the Java version and hardware with the numbers.
+set -euo pipefail
+
+RUNS=${1:-5}
+JAR_ARG=${2:-target/flowcrmtutorial-1.0-SNAPSHOT.jar}
+DIR_ARG=${3:-target/fast-startup}
+if [[ ! -f "$JAR_ARG" || ! -f "$DIR_ARG/app.jsa" ]]; then
+    echo "$JAR_ARG or $DIR_ARG/app.jsa is missing, build them with: ./mvnw clean package -Pproduction,fast-startup" >&2
+    exit 1
+fi
+JAR=$(cd "$(dirname "$JAR_ARG")" && pwd)/$(basename "$JAR_ARG")
+DIR=$(cd "$DIR_ARG" && pwd)
+COMMON=(--server.port=0 --crm.startup.exit-after-ready=true)
+PROD=(--spring.profiles.active=prod --spring.datasource.url=jdbc:h2:mem:startup)
+
+# Prints the ready time of one start of the given command.
+start() {
+    local ms
+    ms=$("$@" 2>&1 | sed -n 's/.*Ready to accept traffic in \([0-9]*\) ms.*/\1/p' | head -1)
+    if [[ -z "$ms" ]]; then
+        echo "no startup time in the output of: $*" >&2
+        exit 1
+    fi
+    echo "$ms"
+}
+
+# Prints "min median max" of RUNS starts of the given command, after one start that isn't counted.
+measure() {
+    start "$@" > /dev/null
+    for _ in $(seq 1 "$RUNS"); do
+        start "$@"
+    done | sort -n | awk '{ t[NR] = $1 } END { print t[1], t[int((NR + 1) / 2)], t[NR] }'
+}
+
+report() {
+    local name=$1 min=$2 median=$3 max=$4
+    awk -v name="$name" -v min="$min" -v median="$median" -v max="$max" -v today="${TODAY[1]}" 'BEGIN {
+        printf "%-14s %7d %7d %7d %+8.1f%%\n", name, min, median, max, 100 * (median - today) / today }'
+}
+
+echo "$(java -version 2>&1 | head -1), $(nproc) cores, $RUNS runs per variant"
+read -ra TODAY <<< "$(measure java -jar "$JAR" "${COMMON[@]}")"
+read -ra PROD_MS <<< "$(measure java -jar "$JAR" "${COMMON[@]}" "${PROD[@]}")"
+read -ra AOT <<< "$(cd "$DIR" && measure java -Dspring.aot.enabled=true -cp "$(cat classpath)" \
+    tech.hidetora.application.Application "${COMMON[@]}" "${PROD[@]}")"
+read -ra CDS <<< "$(cd "$DIR" && measure java -Xshare:on -XX:SharedArchiveFile=app.jsa -Dspring.aot.enabled=true \
+    -cp "$(cat classpath)" tech.hidetora.application.Application "${COMMON[@]}" "${PROD[@]}")"
+
+printf '%-14s %7s %7s %7s %9s\n' "ready in (ms)" "min" "median" "max" "vs today"
+report "today" "${TODAY[@]}"
+report "prod" "${PROD_MS[@]}"
+report "prod+aot" "${AOT[@]}"
+report "prod+aot+cds" "${CDS[@]}"
@@ -0,0 +1,14 @@
+#!/usr/bin/env bash
+# Starts the fast-startup build (see build-cds.sh) with its AOT code and CDS archive. Arguments are passed on:
+#
+#   src/fast-startup/run.sh [target/fast-startup] --spring.profiles.active=prod
+set -euo pipefail
+
+DIR=target/fast-startup
+if [[ $# -gt 0 && -d "$1" ]]; then
+    DIR=$1
+    shift
+fi
+cd "$DIR"
+exec java -XX:SharedArchiveFile=app.jsa -Dspring.aot.enabled=true -cp "$(cat classpath)" \
+    tech.hidetora.application.Application "$@"
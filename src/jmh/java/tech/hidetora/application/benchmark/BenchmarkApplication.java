@@ -0,0 +1,50 @@
+package tech.hidetora.application.benchmark;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.ConfigurableApplicationContext;
+import tech.hidetora.application.Application;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the application for a benchmark: on the given database, with the schema of the Flyway migrations
+ * created from scratch, and without the scheduled jobs that would run in the middle of a measurement.
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * @param properties more properties, as name=value
+     */
+    static ConfigurableApplicationContext start(String jdbcUrl, String... properties) {
+        SpringApplication application = new SpringApplication(Application.class);
+        // Every trial starts from an empty schema, also on file and server databases.
+        application.addInitializers(initializing -> initializing.getBeanFactory().registerSingleton("cleanMigration",
+                (FlywayMigrationStrategy) flyway -> {
+                    flyway.clean();
+                    flyway.migrate();
+                }));
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=" + jdbcUrl,
+                "--spring.flyway.enabled=true",
+                "--spring.flyway.clean-disabled=false",
+                "--spring.jpa.hibernate.ddl-auto=validate",
+                "--spring.sql.init.mode=never",
+                "--spring.jpa.defer-datasource-initialization=false",
+                "--logging.level.root=WARN",
+                "--crm.dashboard.resync-interval=PT24H",
+                "--crm.reference-data.refresh-interval=PT24H",
+                "--crm.company-counters.repair-cron=-",
+                "--crm.session-footprint.interval=PT24H"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        // Arguments and not default properties, so they win over application.properties.
+        return application.run(args.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,106 @@
+package tech.hidetora.application.benchmark;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Seeds the database with any number of contacts, companies and statuses modeled on the demo data of data.sql:
+ * the names of data.sql are reused (companies and statuses get a number appended), first and last names
+ * are combined, and the emails follow the first.last@domain pattern of the demo contacts.
+ * The rows are inserted with JDBC batches, bypassing JPA, into the schema created by the Flyway migrations.
+ */
+final class BenchmarkData {
+    private static final Pattern STATEMENT = Pattern.compile("INSERT INTO \"(\\w+)\"[^;]*;", Pattern.DOTALL);
+    private static final Pattern NAME_ROW = Pattern.compile("\\(\\d+, \\d+, '((?:[^']|'')*)'\\)");
+    private static final Pattern CONTACT_ROW =
+            Pattern.compile("\\(\\d+, \\d+, '[^'@]*@([^']*)', '([^']*)', '([^']*)', \\d+, \\d+\\)");
+    // Far above the ids the sequence hands out while benchmarking, so seeded and saved rows never collide.
+    private static final long FIRST_ID = 10_000_000L;
+    private static final int BATCH_SIZE = 1000;
+
+    private final List<String> statusNames = new ArrayList<>();
+    private final List<String> companyNames = new ArrayList<>();
+    private final List<String> firstNames = new ArrayList<>();
+    private final List<String> lastNames = new ArrayList<>();
+    private final List<String> domains = new ArrayList<>();
+
+    BenchmarkData() throws IOException {
+        String sql = new ClassPathResource("data.sql").getContentAsString(StandardCharsets.UTF_8);
+        Matcher statement = STATEMENT.matcher(sql);
+        while (statement.find()) {
+            String table = statement.group(1);
+            if (table.equals("CONTACT")) {
+                Matcher row = CONTACT_ROW.matcher(statement.group());
+                while (row.find()) {
+                    domains.add(row.group(1));
+                    firstNames.add(row.group(2));
+                    lastNames.add(row.group(3));
+                }
+            } else {
+                Matcher row = NAME_ROW.matcher(statement.group());
+                List<String> names = table.equals("STATUS") ? statusNames : companyNames;
+                while (row.find()) {
+                    names.add(row.group(1).replace("''", "'"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the given number of rows, returns the ids of the seeded contacts (first and last).
+     */
+    long[] seed(JdbcTemplate jdbc, int contacts, int companies, int statuses) {
+        long statusId = FIRST_ID;
+        long companyId = statusId + statuses;
+        long contactId = companyId + companies;
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < statuses; i++) {
+            rows.add(new Object[]{statusId + i, statusNames.get(i % statusNames.size()) + " " + (i + 1)});
+        }
+        jdbc.batchUpdate("INSERT INTO status (ID, VERSION, NAME) VALUES (?, 1, ?)", rows);
+
+        rows.clear();
+        for (int i = 0; i < companies; i++) {
+            rows.add(new Object[]{companyId + i, companyNames.get(i % companyNames.size()) + " " + (i + 1)});
+        }
+        jdbc.batchUpdate("INSERT INTO company (ID, VERSION, NAME) VALUES (?, 1, ?)", rows);
+
+        // Every company gets its counter with it, already counting the contacts below.
+        rows.clear();
+        for (int i = 0; i < companies; i++) {
+            rows.add(new Object[]{companyId + i, contacts / companies + (i < contacts % companies ? 1 : 0)});
+        }
+        jdbc.batchUpdate("INSERT INTO company_counter (COMPANY_ID, EMPLOYEE_COUNT) VALUES (?, ?)", rows);
+
+        rows.clear();
+        for (int i = 0; i < contacts; i++) {
+            // Walks through all first x last name combinations before repeating one.
+            String firstName = firstNames.get(i % firstNames.size());
+            String lastName = lastNames.get((i / firstNames.size()) % lastNames.size());
+            String email = (firstName + "." + lastName + "." + i).toLowerCase(Locale.ROOT)
+                    + "@" + domains.get(i % domains.size());
+            rows.add(new Object[]{contactId + i, email, firstName, lastName,
+                    companyId + i % companies, statusId + i % statuses});
+            if (rows.size() == BATCH_SIZE) {
+                insertContacts(jdbc, rows);
+            }
+        }
+        insertContacts(jdbc, rows);
+        return new long[]{contactId, contactId + contacts - 1};
+    }
+
+    private static void insertContacts(JdbcTemplate jdbc, List<Object[]> rows) {
+        jdbc.batchUpdate("INSERT INTO contact (ID, VERSION, EMAIL, FIRST_NAME, LAST_NAME, COMPANY_ID, STATUS_ID) "
+                + "VALUES (?, 1, ?, ?, ?, ?, ?)", rows);
+        rows.clear();
+    }
+}
@@ -0,0 +1,115 @@
+package tech.hidetora.application.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import tech.hidetora.application.data.entity.Company;
+import tech.hidetora.application.data.entity.Status;
+import tech.hidetora.application.data.service.ContactImportService;
+import tech.hidetora.application.data.service.CrmService;
+import tech.hidetora.application.data.service.ReferenceDataService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to import a file of contacts, parsing, validation, the chunked inserts and the search index included.
+ * <p>
+ * Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args=ContactImportBenchmark}, other file sizes with
+ * {@code -p rows=100000}. Every import starts from a database without contacts, on the companies and statuses
+ * seeded by BenchmarkData. The database is set with the jdbcUrl parameter, like in CrmServiceBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ContactImportBenchmark {
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"CSV", "JSON"})
+    public ContactImportService.Format format;
+
+    @Param({"jdbc:h2:mem:import-benchmark;DB_CLOSE_DELAY=-1"})
+    public String jdbcUrl;
+
+    private ConfigurableApplicationContext context;
+    private ContactImportService importService;
+    private JdbcTemplate jdbc;
+    private byte[] file;
+
+    @Setup(Level.Trial)
+    public void startApplication() throws IOException {
+        context = BenchmarkApplication.start(jdbcUrl);
+        importService = context.getBean(ContactImportService.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        new BenchmarkData().seed(jdbc, 0, 100, 5);
+        context.getBean(ReferenceDataService.class).refresh();
+
+        CrmService service = context.getBean(CrmService.class);
+        List<String> companies = service.findAllCompanies().stream().map(Company::getName).toList();
+        List<String> statuses = service.findAllStatuses().stream().map(Status::getName).toList();
+        StringBuilder content = new StringBuilder(format == ContactImportService.Format.CSV
+                ? "firstName,lastName,email,company,status\n" : "[\n");
+        for (int i = 0; i < rows; i++) {
+            String company = companies.get(i % companies.size());
+            String status = statuses.get(i % statuses.size());
+            if (format == ContactImportService.Format.CSV) {
+                content.append("First").append(i).append(",Last").append(i).append(",first.last.").append(i)
+                        .append("@example.com,\"").append(company.replace("\"", "\"\"")).append("\",")
+                        .append(status).append('\n');
+            } else {
+                content.append(i == 0 ? "" : ",\n")
+                        .append("{\"firstName\":\"First").append(i).append("\",\"lastName\":\"Last").append(i)
+                        .append("\",\"email\":\"first.last.").append(i).append("@example.com\",\"company\":\"")
+                        .append(company).append("\",\"status\":\"").append(status).append("\"}");
+            }
+        }
+        if (format == ContactImportService.Format.JSON) {
+            content.append("\n]\n");
+        }
+        file = content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    // Every import inserts the same contacts into an empty table, the timings don't grow with the iterations.
+    @Setup(Level.Iteration)
+    public void deleteContacts() {
+        jdbc.update("DELETE FROM contact_trigram");
+        jdbc.update("DELETE FROM contact");
+        jdbc.update("UPDATE company_counter SET employee_count = 0");
+    }
+
+    @Benchmark
+    public ContactImportService.ImportResult importContacts() throws IOException {
+        ContactImportService.ImportResult result = importService.importContacts(
+                new ByteArrayInputStream(file), format, progress -> {
+                });
+        if (result.imported() != rows) {
+            throw new IllegalStateException("Imported " + result.imported() + " of " + rows + " contacts: "
+                    + result.errors());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,211 @@
+package tech.hidetora.application.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import tech.hidetora.application.data.entity.Company;
+import tech.hidetora.application.data.entity.Contact;
+import tech.hidetora.application.data.projection.ContactRow;
+import tech.hidetora.application.data.repository.ContactRepository;
+import tech.hidetora.application.data.service.ContactSearchIndex;
+import tech.hidetora.application.data.service.CrmService;
+import tech.hidetora.application.data.service.DashboardStatsService;
+import tech.hidetora.application.data.service.ReferenceDataService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmarks of the data layer hot paths, against an in-memory H2 database seeded by BenchmarkData.
+ * <p>
+ * Run with {@code mvn -Pjmh test-compile exec:exec}, pass JMH options with
+ * {@code -Djmh.args="CrmServiceBenchmark -p contacts=100000"} (see {@code -h} for all options).
+ * The whole application is started once per fork, so the numbers include the real transaction,
+ * cache and index setup, but no HTTP or Vaadin overhead.
+ * <p>
+ * The schema is created by the Flyway migrations of the prod profile, from scratch for every trial.
+ * The database is set with the jdbcUrl parameter, e.g. {@code -p jdbcUrl=jdbc:h2:file:./target/benchmark/crm}
+ * or a local PostgreSQL database (with {@code -Dspring.datasource.username=... -Dspring.datasource.password=...}).
+ * {@code -p indexes=false} drops the indexes added for production (db/migration), for a before/after comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrmServiceBenchmark {
+    // A term matching a few percent of the seeded contacts, with and without the trigram index.
+    private static final String SEARCH_TERM = "lan";
+    private static final String SHORT_TERM = "la";
+    private static final PageRequest GRID_PAGE = PageRequest.of(0, 50);
+    private static final PageRequest EMAIL_PAGE = PageRequest.of(0, 50, Sort.by("email"));
+    // The indexes of db/migration beyond the keyset and search index ones, which predate the migrations.
+    private static final List<String> PRODUCTION_INDEXES = List.of(
+            "idx_contact_company", "idx_contact_status", "idx_contact_first_name", "idx_contact_email");
+
+    @Param({"10000"})
+    public int contacts;
+
+    @Param({"100"})
+    public int companies;
+
+    @Param({"5"})
+    public int statuses;
+
+    @Param({"jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1"})
+    public String jdbcUrl;
+
+    @Param({"true", "false"})
+    public boolean indexes;
+
+    private ConfigurableApplicationContext context;
+    private CrmService service;
+    private ContactRepository contactRepository;
+    private ContactSearchIndex searchIndex;
+    private long firstContactId;
+    private long lastContactId;
+
+    // saveContact() moves contacts between these two, with a new email for every save.
+    private Company firstCompany;
+    private Company secondCompany;
+    private final AtomicLong saves = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void startApplication() throws Exception {
+        context = BenchmarkApplication.start(jdbcUrl);
+        service = context.getBean(CrmService.class);
+        contactRepository = context.getBean(ContactRepository.class);
+        searchIndex = context.getBean(ContactSearchIndex.class);
+
+        if (!indexes) {
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            for (String index : PRODUCTION_INDEXES) {
+                jdbc.execute("drop index if exists " + index);
+            }
+        }
+        long[] seeded = new BenchmarkData().seed(context.getBean(JdbcTemplate.class), contacts, companies, statuses);
+        firstContactId = seeded[0];
+        lastContactId = seeded[1];
+        // Bring everything derived from the contacts up to date with the seeded rows.
+        searchIndex.rebuild();
+        context.getBean(ReferenceDataService.class).refresh();
+        context.getBean(DashboardStatsService.class).resync();
+        List<Company> allCompanies = service.findAllCompanies();
+        firstCompany = allCompanies.get(0);
+        secondCompany = allCompanies.get(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    /**
+     * A freshly loaded contact for every saveContact() call, saving the same instance twice would be a stale update.
+     * A state of its own, so only saveContact() pays for the query and the per-invocation setup.
+     */
+    @State(Scope.Thread)
+    public static class ContactToSave {
+        private Contact contact;
+
+        @Setup(Level.Invocation)
+        public void load(CrmServiceBenchmark benchmark) {
+            long id = ThreadLocalRandom.current().nextLong(benchmark.firstContactId, benchmark.lastContactId + 1);
+            contact = benchmark.service.findContact(id).orElseThrow();
+        }
+    }
+
+    @Benchmark
+    public List<Contact> findAllContacts() {
+        return service.findAllContacts((String) null);
+    }
+
+    @Benchmark
+    public List<Contact> findAllContactsFiltered() {
+        return service.findAllContacts(SEARCH_TERM);
+    }
+
+    @Benchmark
+    public List<ContactRow> findContactRowsPage() {
+        return service.findContactRowsAfter(null, GRID_PAGE.getPageSize());
+    }
+
+    /**
+     * A grid page sorted by a column other than the keyset order.
+     */
+    @Benchmark
+    public List<ContactRow> findContactRowsSortedByEmail() {
+        return service.findContactRows(null, EMAIL_PAGE);
+    }
+
+    @Benchmark
+    public List<Contact> searchLike() {
+        return contactRepository.search(SEARCH_TERM, GRID_PAGE);
+    }
+
+    @Benchmark
+    public List<ContactRow> searchIndexed() {
+        return searchIndex.searchRows(SEARCH_TERM, GRID_PAGE);
+    }
+
+    /**
+     * The grid's search path: served from ContactSearchCache after the first invocation.
+     */
+    @Benchmark
+    public List<ContactRow> searchCached() {
+        return service.findContactRows(SEARCH_TERM, GRID_PAGE);
+    }
+
+    @Benchmark
+    public long countContacts() {
+        return service.countContacts();
+    }
+
+    @Benchmark
+    public long countSearchLike() {
+        return contactRepository.countSearch(SHORT_TERM);
+    }
+
+    @Benchmark
+    public long countSearchIndexed() {
+        return searchIndex.count(SEARCH_TERM);
+    }
+
+    /**
+     * Companies with their employee counts.
+     */
+    @Benchmark
+    public List<Company> findAllCompanies() {
+        return service.findAllCompanies();
+    }
+
+    /**
+     * Saves a contact that moves to another company: the update, the search index and both employee counters.
+     * The company and the email always change, so no save is skipped by the dirty check.
+     */
+    @Benchmark
+    public Contact saveContact(ContactToSave toSave) {
+        Contact contact = toSave.contact;
+        contact.setEmail("moved." + saves.incrementAndGet() + "@example.com");
+        contact.setCompany(firstCompany.getId().equals(contact.getCompany().getId()) ? secondCompany : firstCompany);
+        service.saveContact(contact);
+        return contact;
+    }
+}
@@ -0,0 +1,117 @@
+package tech.hidetora.application.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.hidetora.application.data.entity.AppUser;
+import tech.hidetora.application.data.repository.AppUserRepository;
+import tech.hidetora.application.security.AppUserDetailsService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Login throughput of a login storm: many threads authenticating users at the same time,
+ * through the same user store, password encoder and hash limit as the login form.
+ * <p>
+ * Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args=LoginBenchmark}, compare BCrypt costs with
+ * {@code -p strength=10,12} and hash limits with {@code -p maxConcurrentHashes=1,4,16} (0 = one per core).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(16)
+@Fork(1)
+public class LoginBenchmark {
+    private static final String PASSWORD = "benchmark-password";
+
+    @Param({"200"})
+    public int users;
+
+    @Param({"10"})
+    public int strength;
+
+    @Param({"0"})
+    public int maxConcurrentHashes;
+
+    private ConfigurableApplicationContext context;
+    private AuthenticationManager authenticationManager;
+
+    @Setup
+    public void startApplication() {
+        context = BenchmarkApplication.start("jdbc:h2:mem:login-benchmark;DB_CLOSE_DELAY=-1",
+                "crm.security.bcrypt-strength=" + strength,
+                "crm.security.max-concurrent-hashes=" + maxConcurrentHashes,
+                // Measure waiting for a turn, not rejected logins.
+                "crm.security.hash-wait=PT1M");
+        PasswordEncoder passwordEncoder = context.getBean(PasswordEncoder.class);
+        AppUserDetailsService userDetailsService = context.getBean(AppUserDetailsService.class);
+
+        // All users share one hash, encoding hundreds of them would only slow down the setup.
+        String hash = passwordEncoder.encode(PASSWORD);
+        List<AppUser> appUsers = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            appUsers.add(new AppUser(username(i), hash, "USER", true));
+        }
+        context.getBean(TransactionTemplate.class).executeWithoutResult(status ->
+                context.getBean(AppUserRepository.class).saveAll(appUsers));
+
+        // What Spring Security builds for the login form from these beans.
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(userDetailsService);
+        provider.setUserDetailsPasswordService(userDetailsService);
+        provider.setPasswordEncoder(passwordEncoder);
+        authenticationManager = new ProviderManager(provider);
+    }
+
+    @TearDown
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public Authentication login() {
+        return authenticationManager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated(
+                username(ThreadLocalRandom.current().nextInt(users)), PASSWORD));
+    }
+
+    /**
+     * A wrong password costs the same hash verification as a right one.
+     */
+    @Benchmark
+    public Object loginWithWrongPassword() {
+        try {
+            return authenticationManager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated(
+                    username(ThreadLocalRandom.current().nextInt(users)), "wrong-password"));
+        } catch (BadCredentialsException e) {
+            return e;
+        }
+    }
+
+    private static String username(int i) {
+        return "benchmark-user-" + i;
+    }
+}
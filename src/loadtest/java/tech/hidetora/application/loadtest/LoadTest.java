@@ -0,0 +1,228 @@
+package tech.hidetora.application.loadtest;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares throughput and latency of running instances of the application, e.g. one with platform threads
+ * and one with the virtual-threads profile.
+ * <p>
+ * Every simulated user logs in and then opens a view over and over. Opening a view is the Vaadin init request,
+ * which runs the view's constructor on the server: for the list flow the contact grid's size and first page
+ * queries, for the dashboard flow the statistics and chart. Only the init request is timed. Every opened UI is
+ * closed right away with the unload beacon a browser sends when leaving the page, so the sessions don't pile up
+ * thousands of UIs that would turn the comparison into one of heap sizes and garbage collection.
+ * <p>
+ * One flow is measured per run, on freshly started instances: start the instances, run the list flow, restart
+ * the instances, run the dashboard flow.
+ * <pre>
+ * mvn spring-boot:run -Dspring-boot.run.arguments=--server.port=8080
+ * mvn spring-boot:run -Dspring-boot.run.arguments="--server.port=8081 --spring.profiles.active=virtual-threads"
+ * mvn -Ploadtest test-compile exec:java -Dloadtest.flow=list
+ * </pre>
+ * System properties (pass them to the last command):
+ * <ul>
+ * <li>loadtest.flow: list or dashboard, default list</li>
+ * <li>loadtest.targets: label=url pairs, default platform=http://localhost:8080,virtual=http://localhost:8081</li>
+ * <li>loadtest.users: concurrent users, default 100</li>
+ * <li>loadtest.warmup and loadtest.duration: ISO-8601 durations per flow, default PT10S and PT30S</li>
+ * <li>loadtest.username and loadtest.password: an account that can open both views, default admin/admin</li>
+ * </ul>
+ */
+public final class LoadTest {
+    private static final Map<String, String> FLOWS = new LinkedHashMap<>();
+    private static final Pattern UI_ID = Pattern.compile("\"v-uiId\"\\s*:\\s*(\\d+)");
+    private static final Pattern SECURITY_KEY = Pattern.compile("\"Vaadin-Security-Key\"\\s*:\\s*\"([^\"]+)\"");
+
+    static {
+        FLOWS.put("list", "");
+        FLOWS.put("dashboard", "dashboard");
+    }
+
+    private final URI baseUri;
+    private final int users;
+    private final String username;
+    private final String password;
+
+    private LoadTest(URI baseUri, int users, String username, String password) {
+        this.baseUri = baseUri;
+        this.users = users;
+        this.username = username;
+        this.password = password;
+    }
+
+    record Result(String target, String flow, long requests, long errors, double throughput,
+                  double p50Millis, double p99Millis) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String flowName = System.getProperty("loadtest.flow", "list");
+        String location = FLOWS.get(flowName);
+        if (location == null) {
+            throw new IllegalArgumentException("Unknown flow " + flowName + ", use one of " + FLOWS.keySet());
+        }
+        String targets = System.getProperty("loadtest.targets",
+                "platform=http://localhost:8080,virtual=http://localhost:8081");
+        int users = Integer.getInteger("loadtest.users", 100);
+        Duration warmup = Duration.parse(System.getProperty("loadtest.warmup", "PT10S"));
+        Duration duration = Duration.parse(System.getProperty("loadtest.duration", "PT30S"));
+        String username = System.getProperty("loadtest.username", "admin");
+        String password = System.getProperty("loadtest.password", "admin");
+
+        List<Result> results = new ArrayList<>();
+        for (String target : targets.split(",")) {
+            String[] labelAndUrl = target.split("=", 2);
+            LoadTest test = new LoadTest(URI.create(labelAndUrl[1].trim()), users, username, password);
+            System.out.printf("Running %s on %s with %d users...%n", flowName, labelAndUrl[0], users);
+            test.run(location, warmup);
+            results.add(test.measure(labelAndUrl[0].trim(), flowName, location, duration));
+        }
+
+        System.out.printf("%n%-12s %-10s %10s %8s %10s %10s %10s%n",
+                "target", "flow", "requests", "errors", "req/s", "p50 ms", "p99 ms");
+        for (Result result : results) {
+            System.out.printf("%-12s %-10s %10d %8d %10.1f %10.1f %10.1f%n", result.target(), result.flow(),
+                    result.requests(), result.errors(), result.throughput(), result.p50Millis(), result.p99Millis());
+        }
+    }
+
+    private Result measure(String target, String flowName, String location, Duration duration) throws Exception {
+        List<long[]> latencies = run(location, duration);
+        long errors = latencies.stream().mapToLong(user -> user[0]).sum();
+        long[] all = latencies.stream()
+                .flatMapToLong(user -> Arrays.stream(user, 1, user.length))
+                .sorted()
+                .toArray();
+        return new Result(target, flowName, all.length, errors, all.length / (duration.toMillis() / 1000.0),
+                percentile(all, 0.50), percentile(all, 0.99));
+    }
+
+    /**
+     * Runs all users for the given time. Per user: the number of errors, followed by the latency
+     * in nanoseconds of every successful request.
+     */
+    private List<long[]> run(String location, Duration duration) throws Exception {
+        long end = System.nanoTime() + duration.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < users; i++) {
+                futures.add(executor.submit(() -> user(location, end)));
+            }
+            List<long[]> results = new ArrayList<>();
+            for (Future<long[]> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long[] user(String location, long end) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .cookieHandler(new CookieManager()) // Keeps the session of this user.
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        login(client);
+        HttpRequest openView = HttpRequest.newBuilder(baseUri.resolve("/?v-r=init&location="
+                        + URLEncoder.encode(location, StandardCharsets.UTF_8) + "&query="))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        LongList latencies = new LongList();
+        long errors = 0;
+        while (System.nanoTime() < end) {
+            long started = System.nanoTime();
+            try {
+                HttpResponse<String> response = client.send(openView, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 200) {
+                    latencies.add(System.nanoTime() - started);
+                    closeUi(client, response.body());
+                } else {
+                    errors++;
+                }
+            } catch (IOException e) {
+                errors++;
+            }
+        }
+        long[] result = new long[latencies.size + 1];
+        result[0] = errors;
+        System.arraycopy(latencies.values, 0, result, 1, latencies.size);
+        return result;
+    }
+
+    private void login(HttpClient client) throws IOException, InterruptedException {
+        // Opens the session, then submits the login form the way the LoginView does.
+        client.send(HttpRequest.newBuilder(baseUri.resolve("/login")).GET().build(),
+                HttpResponse.BodyHandlers.discarding());
+        String form = "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(password, StandardCharsets.UTF_8);
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(baseUri.resolve("/login"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString(form))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        String location = response.headers().firstValue("Location").orElse("");
+        if (response.statusCode() != 302 || location.contains("error")) {
+            throw new IllegalStateException("Login as " + username + " failed: " + response.statusCode() + " " + location);
+        }
+    }
+
+    /**
+     * Sends the unload beacon for the UI opened by the given init response, which closes the UI on the server.
+     */
+    private void closeUi(HttpClient client, String initResponse) throws IOException, InterruptedException {
+        Matcher uiId = UI_ID.matcher(initResponse);
+        Matcher securityKey = SECURITY_KEY.matcher(initResponse);
+        if (!uiId.find() || !securityKey.find()) {
+            throw new IllegalStateException("No UI id or security key in the init response, can't close the UI");
+        }
+        String beacon = "{\"csrfToken\":\"" + securityKey.group(1) + "\",\"rpc\":[],\"syncId\":0,\"clientId\":0,"
+                + "\"UNLOAD\":true}";
+        client.send(HttpRequest.newBuilder(baseUri.resolve("/?v-r=uidl&v-uiId=" + uiId.group(1)))
+                        .header("Content-Type", "application/json; charset=UTF-8")
+                        .timeout(Duration.ofSeconds(30))
+                        .POST(HttpRequest.BodyPublishers.ofString(beacon))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    // Growable long array, keeps millions of latencies without boxing them.
+    private static final class LongList {
+        long[] values = new long[1024];
+        int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package tech.hidetora.application;
 
 import com.vaadin.flow.component.page.AppShellConfigurator;
+import com.vaadin.flow.component.page.Push;
 import com.vaadin.flow.server.PWA;
 import com.vaadin.flow.theme.Theme;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * The entry point of the Spring Boot application.
@@ -12,9 +14,13 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * Use the @PWA annotation make the application installable on phones, tablets
  * and some desktop browsers.
  *
+ * Use the @Push annotation to let the server update open views (e.g. when another user changes a contact).
+ *
  */
 @SpringBootApplication
+@EnableScheduling
 @Theme(value = "flowcrmtutorial")
+@Push
 @PWA(
         name = "Flow CRM Tutorial",
         shortName = "Flow CRM",
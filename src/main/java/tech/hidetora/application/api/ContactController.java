@@ -0,0 +1,227 @@
+package tech.hidetora.application.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
+import tech.hidetora.application.data.entity.AbstractEntity;
+import tech.hidetora.application.data.entity.Contact;
+import tech.hidetora.application.data.service.CrmService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * REST API over CrmService for integrations, authenticated with HTTP Basic (see SecurityConfig).
+ * <p>
+ * Every contact has an ETag made of its version and the versions of its company and status, so it changes
+ * whenever anything in its representation does. Send it back in If-None-Match to get 304 Not Modified
+ * instead of the contact, or in If-Match on PUT and DELETE to get 412 Precondition Failed instead of
+ * overwriting a change made in the meantime. Pages have an ETag derived from the ones of their contacts.
+ * <p>
+ * GET /api/contacts/stream writes every contact matching the filter as one JSON array, streamed from the
+ * database with Jackson's generator, so its memory use doesn't depend on the number of contacts.
+ */
+@RestController
+@RequestMapping("/api/contacts")
+@RequiredArgsConstructor
+@Slf4j
+public class ContactController {
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int CLEAR_INTERVAL = 500;
+
+    private final CrmService service;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * A page of the contacts matching the filter, in (lastName, firstName, id) order.
+     */
+    @GetMapping
+    public ResponseEntity<List<ContactDto>> list(@RequestParam(defaultValue = "") String filter,
+                                                 @RequestParam(defaultValue = "0") int page,
+                                                 @RequestParam(defaultValue = "50") int size) {
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "page must be at least 0 and size between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<Contact> contacts = service.findAllContacts(filter, PageRequest.of(page, size, CrmService.KEYSET_SORT));
+        String pageTag = contacts.stream()
+                .map(contact -> contact.getId() + ":" + etag(contact))
+                .collect(Collectors.joining(","));
+        // Spring answers a matching If-None-Match with 304 Not Modified, without writing the body.
+        return ResponseEntity.ok()
+                .eTag("W/\"" + DigestUtils.md5DigestAsHex(pageTag.getBytes(StandardCharsets.UTF_8)) + "\"")
+                .body(contacts.stream().map(ContactDto::of).toList());
+    }
+
+    /**
+     * Every contact matching the filter, in one response.
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> stream(@RequestParam(defaultValue = "") String filter) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        // Runs after this method returned, on a thread of the MVC task executor.
+        StreamingResponseBody body = out -> readOnly.executeWithoutResult(status -> {
+            try {
+                write(filter, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ContactDto> get(@PathVariable Long id) {
+        Contact contact = find(id);
+        return ResponseEntity.ok().eTag(etag(contact)).body(ContactDto.of(contact));
+    }
+
+    @PostMapping
+    public ResponseEntity<ContactDto> create(@RequestBody ContactDto dto, UriComponentsBuilder uri) {
+        Contact contact = new Contact();
+        apply(dto, contact);
+        Contact saved = service.saveContact(contact);
+        return ResponseEntity.created(uri.path("/api/contacts/{id}").buildAndExpand(saved.getId()).toUri())
+                .eTag(etag(saved))
+                .body(ContactDto.of(saved));
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<ContactDto> update(@PathVariable Long id, @RequestBody ContactDto dto,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                             String ifMatch) {
+        Contact contact = find(id);
+        checkIfMatch(contact, ifMatch);
+        apply(dto, contact);
+        // Saved with the version just checked: a change committed in between fails with a locking error.
+        Contact saved = service.saveContact(contact);
+        return ResponseEntity.ok().eTag(etag(saved)).body(ContactDto.of(saved));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> delete(@PathVariable Long id,
+                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                       String ifMatch) {
+        Contact contact = find(id);
+        checkIfMatch(contact, ifMatch);
+        service.deleteContact(contact);
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Void> changedInTheMeantime(OptimisticLockingFailureException e) {
+        log.debug("Contact changed while it was updated through the API", e);
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+    }
+
+    private Contact find(Long id) {
+        return service.findContact(id).orElseThrow(() ->
+                new ResponseStatusException(HttpStatus.NOT_FOUND, "No contact " + id));
+    }
+
+    private void apply(ContactDto dto, Contact contact) {
+        contact.setFirstName(dto.firstName());
+        contact.setLastName(dto.lastName());
+        contact.setEmail(dto.email());
+        contact.setCompany(dto.companyId() == null ? null : service.findCompany(dto.companyId())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "No company " + dto.companyId())));
+        contact.setStatus(dto.statusId() == null ? null : service.findStatus(dto.statusId())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "No status " + dto.statusId())));
+        // The same constraints the contact form checks.
+        String violations = validator.validate(contact).stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+        if (!violations.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, violations);
+        }
+    }
+
+    private static void checkIfMatch(Contact contact, String ifMatch) {
+        if (ifMatch == null) {
+            return; // Unconditional request.
+        }
+        String current = etag(contact);
+        // Weak tags never match, If-Match compares strongly.
+        boolean matches = Arrays.stream(ifMatch.split(","))
+                .map(String::trim)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(current));
+        if (!matches) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+                    "Contact " + contact.getId() + " is at " + current);
+        }
+    }
+
+    private static String etag(Contact contact) {
+        return "\"" + contact.getVersion() + "." + version(contact.getCompany()) + "."
+                + version(contact.getStatus()) + "\"";
+    }
+
+    private static String version(AbstractEntity entity) {
+        return entity == null ? "-" : String.valueOf(entity.getVersion());
+    }
+
+    // Called inside a read-only transaction.
+    private void write(String filter, OutputStream out) throws IOException {
+        long started = System.currentTimeMillis();
+        long written = 0;
+        // The generator must not close the stream, the servlet container owns it.
+        try (Stream<Contact> contacts = service.streamContacts(filter);
+             JsonGenerator json = objectMapper.createGenerator(out)
+                     .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            json.writeStartArray();
+            Iterator<Contact> iterator = contacts.iterator();
+            while (iterator.hasNext()) {
+                json.writePOJO(ContactDto.of(iterator.next()));
+                if (++written % CLEAR_INTERVAL == 0) {
+                    // Forgets the contacts written so far, the scrolled result set keeps adding new ones.
+                    entityManager.clear();
+                }
+            }
+            json.writeEndArray();
+        }
+        log.debug("Streamed {} contacts in {} ms", written, System.currentTimeMillis() - started);
+    }
+}
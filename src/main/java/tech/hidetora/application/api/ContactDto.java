@@ -0,0 +1,31 @@
+package tech.hidetora.application.api;
+
+import tech.hidetora.application.data.entity.Contact;
+
+/**
+ * A contact as the REST API reads and writes it.
+ * The company and status are referenced by id, their names are informational and ignored when writing.
+ * The version is the one of the contact, ignored when writing too: send the ETag in If-Match instead.
+ */
+public record ContactDto(Long id,
+                         Integer version,
+                         String firstName,
+                         String lastName,
+                         String email,
+                         Long companyId,
+                         String companyName,
+                         Long statusId,
+                         String statusName) {
+
+    public static ContactDto of(Contact contact) {
+        return new ContactDto(contact.getId(),
+                contact.getVersion(),
+                contact.getFirstName(),
+                contact.getLastName(),
+                contact.getEmail(),
+                contact.getCompany() == null ? null : contact.getCompany().getId(),
+                contact.getCompany() == null ? null : contact.getCompany().getName(),
+                contact.getStatus() == null ? null : contact.getStatus().getId(),
+                contact.getStatus() == null ? null : contact.getStatus().getName());
+    }
+}
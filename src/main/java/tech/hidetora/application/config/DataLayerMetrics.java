@@ -0,0 +1,166 @@
+package tech.hidetora.application.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.BaseStream;
+
+/**
+ * Times every call to CrmService and to the repositories.
+ * <p>
+ * Each call is recorded in the crm.data.calls timer, tagged with the layer (service or repository), the class,
+ * the method, the shape of the query and how many rows it returned (as a bucket, the exact numbers go to the
+ * crm.data.rows summary). The shape lists what the arguments ask for: "filter" for a non-empty search term,
+ * "page" and "sort" for a Pageable or Sort, "ids" for a collection, or "plain" for none of them.
+ * <p>
+ * Calls slower than crm.metrics.slow-call-threshold are logged at WARN, every call is logged at DEBUG.
+ * Hikari pool usage (hikaricp.connections.*) is published by Spring Boot itself.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE) // Outside of the transaction, so the timings include the commit.
+@Slf4j
+public class DataLayerMetrics {
+    private static final String REPOSITORY_PACKAGE = "tech.hidetora.application.data.repository";
+
+    private final MeterRegistry registry;
+    private final long slowCallNanos;
+    // The repository beans are proxies, remember which of their interfaces is ours.
+    private final Map<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+    public DataLayerMetrics(MeterRegistry registry,
+                            @Value("${crm.metrics.slow-call-threshold:PT0.5S}") Duration slowCallThreshold) {
+        this.registry = registry;
+        this.slowCallNanos = slowCallThreshold.toNanos();
+    }
+
+    @Around("execution(public * *(..)) && bean(crmService)")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "service", "CrmService");
+    }
+
+    @Around("execution(public * *(..)) && bean(*Repository)")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "repository", repositoryNames.computeIfAbsent(joinPoint.getThis().getClass(),
+                DataLayerMetrics::repositoryName));
+    }
+
+    private Object time(ProceedingJoinPoint joinPoint, String layer, String className) throws Throwable {
+        String method = joinPoint.getSignature().getName();
+        String shape = shape(joinPoint.getArgs());
+        long started = System.nanoTime();
+        Object result = null;
+        String exception = "none";
+        try {
+            result = joinPoint.proceed();
+            return result;
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            long duration = System.nanoTime() - started;
+            long rows = rows(result);
+            Tags tags = Tags.of("layer", layer, "class", className, "method", method, "shape", shape);
+            Timer.builder("crm.data.calls")
+                    .description("Calls to the service and repositories")
+                    .tags(tags)
+                    .tag("rows", rowsBucket(rows))
+                    .tag("exception", exception)
+                    .register(registry)
+                    .record(duration, TimeUnit.NANOSECONDS);
+            if (rows >= 0) {
+                DistributionSummary.builder("crm.data.rows")
+                        .description("Rows returned by the service and repositories")
+                        .tags(tags)
+                        .register(registry)
+                        .record(rows);
+            }
+            if (duration >= slowCallNanos) {
+                log.warn("Slow call layer={} class={} method={} shape={} rows={} durationMs={} exception={}",
+                        layer, className, method, shape, rows, duration / 1_000_000, exception);
+            } else if (log.isDebugEnabled()) {
+                log.debug("Call layer={} class={} method={} shape={} rows={} durationMicros={}",
+                        layer, className, method, shape, rows, duration / 1_000);
+            }
+        }
+    }
+
+    private static String shape(Object[] args) {
+        StringJoiner shape = new StringJoiner(",");
+        for (Object arg : args) {
+            if (arg instanceof String term && !term.isEmpty()) {
+                shape.add("filter");
+            } else if (arg instanceof Pageable pageable) {
+                shape.add(pageable.getSort().isSorted() ? "page,sort" : "page");
+            } else if (arg instanceof Sort sort && sort.isSorted()) {
+                shape.add("sort");
+            } else if (arg instanceof Collection<?>) {
+                shape.add("ids");
+            }
+        }
+        return shape.length() == 0 ? "plain" : shape.toString();
+    }
+
+    /**
+     * The number of rows in the result, or -1 when it isn't a list of rows (counts, streams, futures, void).
+     */
+    private static long rows(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        } else if (result instanceof Slice<?> slice) {
+            return slice.getNumberOfElements();
+        } else if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        } else if (result == null || result instanceof BaseStream<?, ?> || result instanceof Future<?>
+                || result instanceof Number || result instanceof Boolean) {
+            return -1;
+        }
+        return 1; // A single entity or projection.
+    }
+
+    // Few distinct values, every tag combination is a time series of its own.
+    private static String rowsBucket(long rows) {
+        if (rows < 0) {
+            return "n/a";
+        } else if (rows == 0) {
+            return "0";
+        } else if (rows == 1) {
+            return "1";
+        } else if (rows <= 50) {
+            return "2-50";
+        } else if (rows <= 1000) {
+            return "51-1000";
+        }
+        return ">1000";
+    }
+
+    private static String repositoryName(Class<?> proxyClass) {
+        for (Class<?> type : proxyClass.getInterfaces()) {
+            if (type.getPackageName().equals(REPOSITORY_PACKAGE)) {
+                return type.getSimpleName();
+            }
+        }
+        return proxyClass.getSimpleName();
+    }
+}
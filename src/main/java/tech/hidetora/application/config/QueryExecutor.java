@@ -0,0 +1,88 @@
+package tech.hidetora.application.config;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs database queries off the Vaadin request threads, so a slow query doesn't hold the session lock.
+ * <p>
+ * By default the queries run on a bounded pool of platform threads (crm.query-executor.threads).
+ * With crm.query-executor.virtual-threads (set by the virtual-threads profile) and Java 21 or later,
+ * every query gets its own virtual thread instead: a thread blocked on the database costs next to nothing,
+ * and the connection pool remains the only limit. The application is built for Java 17, where virtual threads
+ * don't exist, so the pool is used there in any case.
+ */
+@Component
+@Slf4j
+public class QueryExecutor {
+    private final ExecutorService executor;
+
+    public QueryExecutor(@Value("${crm.query-executor.threads:8}") int threads,
+                         @Value("${crm.query-executor.virtual-threads:false}") boolean useVirtualThreads) {
+        ExecutorService virtualThreads = useVirtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtualThreads != null) {
+            log.info("Running queries on virtual threads");
+            executor = virtualThreads;
+        } else {
+            if (useVirtualThreads) {
+                log.warn("Virtual threads need Java 21, running queries on {} platform threads", threads);
+            }
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "query-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Runs the task in the background. Cancelling the returned future skips the task when it hasn't started yet,
+     * and interrupts its thread otherwise.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running = executor.submit(() -> {
+            if (result.isDone()) {
+                return; // Cancelled while waiting for a thread.
+            }
+            try {
+                result.complete(task.get());
+            } catch (RuntimeException | Error e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) {
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor(), or null before Java 21.
+     * Looked up reflectively, so the same build runs on Java 17 and uses virtual threads on 21+.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
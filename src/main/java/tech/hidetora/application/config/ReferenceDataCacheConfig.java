@@ -0,0 +1,80 @@
+package tech.hidetora.application.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+
+/**
+ * Hibernate second-level and query cache for the reference data (Status and Company).
+ * <p>
+ * The caches live in Caffeine and are bounded in size and time to live (crm.cache.reference-data.*).
+ * Hibernate evicts the cached entities and queries whenever the entities are written. The company employee
+ * counters change with every contact saved, so they live in CompanyCounter, outside of the cache.
+ * Hits and misses per region are published as the cache.gets metric (tags cache and result), read from the
+ * statistics of the JCache caches. Hibernate's own statistics stay off, they would time every JDBC call.
+ */
+@Configuration
+public class ReferenceDataCacheConfig {
+    public static final String STATUS_REGION = "crm.status";
+    public static final String COMPANY_REGION = "crm.company";
+    private static final String QUERY_RESULTS_REGION = RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME;
+    private static final String UPDATE_TIMESTAMPS_REGION = RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME;
+
+    @Bean
+    CacheManager hibernateCacheManager(@Value("${crm.cache.reference-data.max-size:10000}") long maxSize,
+                                       @Value("${crm.cache.reference-data.ttl:10m}") Duration ttl) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+
+        CaffeineConfiguration<Object, Object> bounded = new CaffeineConfiguration<>();
+        bounded.setMaximumSize(OptionalLong.of(maxSize));
+        bounded.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        bounded.setStatisticsEnabled(true);
+        for (String region : List.of(STATUS_REGION, COMPANY_REGION, QUERY_RESULTS_REGION)) {
+            createIfMissing(cacheManager, region, bounded);
+        }
+        // Hibernate needs the update timestamps for as long as any cached query may refer to them,
+        // so this region is never evicted.
+        CaffeineConfiguration<Object, Object> unbounded = new CaffeineConfiguration<>();
+        unbounded.setStatisticsEnabled(true);
+        createIfMissing(cacheManager, UPDATE_TIMESTAMPS_REGION, unbounded);
+        return cacheManager;
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer hibernateCacheManagerCustomizer(CacheManager hibernateCacheManager) {
+        // Hand the configured caches to Hibernate instead of letting it create unbounded ones.
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    @Bean
+    MeterBinder referenceDataCacheMetrics(CacheManager hibernateCacheManager) {
+        return registry -> {
+            for (String region : List.of(STATUS_REGION, COMPANY_REGION, QUERY_RESULTS_REGION)) {
+                JCacheMetrics.monitor(registry, hibernateCacheManager.getCache(region));
+            }
+        };
+    }
+
+    private static void createIfMissing(CacheManager cacheManager, String name,
+                                        CaffeineConfiguration<Object, Object> configuration) {
+        // The cache manager outlives the application context on devtools restarts.
+        if (cacheManager.getCache(name) == null) {
+            cacheManager.createCache(name, configuration);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package tech.hidetora.application.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opt-in read/write splitting, activated with the replicas profile (see application-replicas.properties).
+ * <p>
+ * Replaces the data source of Spring Boot with a connection pool to spring.datasource.url, the primary, and one
+ * to each of crm.datasource.replicas.urls, all with the spring.datasource.hikari settings and the same credentials.
+ * Read-only transactions are routed to the replicas by ReplicaRoutingDataSource, so query methods must be marked
+ * with @Transactional(readOnly = true) to be served by them. Repository methods called outside a transaction are
+ * read-only unless they modify data.
+ */
+@Configuration
+@Profile("replicas")
+@Slf4j
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    ReplicaRoutingDataSource routingDataSource(DataSourceProperties properties, Environment environment,
+                                               MeterRegistry registry,
+                                               @Value("${crm.datasource.replicas.urls}") String[] replicaUrls,
+                                               @Value("${crm.datasource.replicas.max-lag:PT5S}") Duration maxLag) {
+        HikariDataSource primary = ConnectionPools.create(properties, environment, registry,
+                properties.determineUrl(), "primary");
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            HikariDataSource replica = ConnectionPools.create(properties, environment, registry, url.trim(),
+                    "replica-" + (replicas.size() + 1));
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        log.info("Routing read-only transactions to {} replica(s) lagging at most {}", replicas.size(), maxLag);
+        return new ReplicaRoutingDataSource(primary, replicas, maxLag, registry);
+    }
+
+    /**
+     * The data source used by JPA, Flyway and the SQL initialization. It hands out a connection handle right away,
+     * and takes the real connection from the routing data source when the first statement runs.
+     */
+    @Bean
+    @Primary
+    DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        dataSource.setDefaultAutoCommit(routingDataSource.isAutoCommit());
+        return dataSource;
+    }
+}
@@ -0,0 +1,168 @@
+package tech.hidetora.application.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the statements of read-only transactions to the replicas, and everything else to the primary database.
+ * <p>
+ * The target is chosen when a transaction first uses its connection, after Spring marked the transaction
+ * read-only, so this data source only works behind a LazyConnectionDataSourceProxy (see ReplicaDataSourceConfig).
+ * The replicas take turns.
+ * <p>
+ * Every crm.datasource.replicas.heartbeat-interval the current time is written to the REPLICATION_HEARTBEAT table
+ * of the primary and read back from every replica: the age of the heartbeat a replica has is its lag, at most
+ * one interval more than the real one. Replicas lagging more than crm.datasource.replicas.max-lag, or that can't
+ * be read, get no reads until they have caught up. Without any replica left, the primary serves the reads.
+ * The lags are published as crm.datasource.replica.lag.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    private static final String PRIMARY = "primary";
+    private static final long HEARTBEAT_ID = 1;
+
+    private static final class Replica {
+        private final HikariDataSource dataSource;
+        // -1 while unknown.
+        private volatile long lagMillis = -1;
+        private boolean available;
+
+        Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        String name() {
+            return dataSource.getPoolName();
+        }
+    }
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final AtomicInteger turn = new AtomicInteger();
+    // The replicas that get reads, replaced after every heartbeat.
+    private volatile List<Replica> available = List.of();
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas, Duration maxLag,
+                                    MeterRegistry registry) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.maxLagMillis = maxLag.toMillis();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (Replica replica : this.replicas) {
+            targets.put(replica.name(), replica.dataSource);
+            Gauge.builder("crm.datasource.replica.lag", replica,
+                            r -> r.lagMillis < 0 ? Double.NaN : r.lagMillis / 1000.0)
+                    .description("How far the replica lags behind the primary database, measured by the heartbeat")
+                    .baseUnit("seconds")
+                    .tag("replica", replica.name())
+                    .register(registry);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    public boolean isAutoCommit() {
+        return primary.isAutoCommit();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        List<Replica> candidates = available;
+        if (candidates.isEmpty()) {
+            return PRIMARY;
+        }
+        return candidates.get(Math.floorMod(turn.getAndIncrement(), candidates.size())).name();
+    }
+
+    @Scheduled(fixedDelayString = "${crm.datasource.replicas.heartbeat-interval:PT1S}")
+    public void heartbeat() {
+        writeHeartbeat();
+        List<Replica> caughtUp = new ArrayList<>();
+        for (Replica replica : replicas) {
+            Long beat = readHeartbeat(replica);
+            replica.lagMillis = beat == null ? -1 : Math.max(0, System.currentTimeMillis() - beat);
+            boolean lagging = beat == null || replica.lagMillis > maxLagMillis;
+            if (!lagging) {
+                caughtUp.add(replica);
+            }
+            if (replica.available == lagging) {
+                replica.available = !lagging;
+                if (lagging) {
+                    log.warn("Replica {} gets no reads: {}", replica.name(),
+                            beat == null ? "its heartbeat can't be read" : "it lags " + replica.lagMillis + " ms");
+                } else {
+                    log.info("Replica {} gets reads, it lags {} ms", replica.name(), replica.lagMillis);
+                }
+            }
+        }
+        available = List.copyOf(caughtUp);
+    }
+
+    private void writeHeartbeat() {
+        try (Connection connection = primary.getConnection()) {
+            long now = System.currentTimeMillis();
+            int updated;
+            try (PreparedStatement update = connection.prepareStatement(
+                    "update replication_heartbeat set beat_millis = ? where id = ?")) {
+                update.setLong(1, now);
+                update.setLong(2, HEARTBEAT_ID);
+                updated = update.executeUpdate();
+            }
+            if (updated == 0) {
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "insert into replication_heartbeat (id, beat_millis) values (?, ?)")) {
+                    insert.setLong(1, HEARTBEAT_ID);
+                    insert.setLong(2, now);
+                    insert.executeUpdate();
+                }
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            log.warn("Could not write the replication heartbeat to the primary database", e);
+        }
+    }
+
+    private static Long readHeartbeat(Replica replica) {
+        try (Connection connection = replica.dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement(
+                     "select beat_millis from replication_heartbeat where id = ?")) {
+            select.setLong(1, HEARTBEAT_ID);
+            try (ResultSet result = select.executeQuery()) {
+                return result.next() ? result.getLong(1) : null;
+            }
+        } catch (SQLException e) {
+            log.debug("Could not read the replication heartbeat from {}", replica.name(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.dataSource.close());
+        primary.close();
+    }
+}
@@ -0,0 +1,258 @@
+package tech.hidetora.application.config;
+
+import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.internal.StateNode;
+import com.vaadin.flow.internal.StateTree;
+import com.vaadin.flow.server.VaadinService;
+import com.vaadin.flow.server.VaadinSession;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import tech.hidetora.application.views.LeanModeAware;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Estimates how much memory every Vaadin session holds, and which components hold it.
+ * <p>
+ * Every crm.session-footprint.interval the UIs of each session are serialized into a byte counter,
+ * with the session lock held. The size of that stream is the estimate: objects that can't be serialized
+ * (Spring beans, services) are shared by all sessions and skipped, everything else the UIs reach counts.
+ * The components of the first crm.session-footprint.depth levels are measured the same way on their own,
+ * the ones of at least crm.session-footprint.min-component-size are listed in the breakdown.
+ * A component's size includes its children, so the sizes of nested components overlap.
+ * <p>
+ * A session above crm.session-footprint.warn-size is logged. A session above crm.session-footprint.lean-size
+ * switches to lean mode: its open views that implement LeanModeAware are told so, and views opened later
+ * start in lean mode. The estimates are shown in the Sessions view and published as crm.vaadin.session.size.
+ */
+@Service
+@Slf4j
+public class SessionFootprintAnalyzer {
+    private static final String LEAN_MODE_ATTRIBUTE = SessionFootprintAnalyzer.class.getName() + ".leanMode";
+
+    public enum Budget {
+        OK, WARN, LEAN
+    }
+
+    /**
+     * @param path  the component and its parents, e.g. "MainLayout > ListView > Grid"
+     * @param bytes the serialized size of the component and its children
+     */
+    public record ComponentFootprint(String path, long bytes) {
+    }
+
+    public record SessionFootprint(String user, int uis, long bytes, Budget budget, Instant measuredAt,
+                                   List<ComponentFootprint> components) {
+    }
+
+    private final VaadinSessionMetrics sessionMetrics;
+    private final long warnBytes;
+    private final long leanBytes;
+    private final int depth;
+    private final long minComponentBytes;
+    // The latest footprint of every open session.
+    private final Map<VaadinSession, SessionFootprint> footprints = new ConcurrentHashMap<>();
+
+    public SessionFootprintAnalyzer(VaadinSessionMetrics sessionMetrics, MeterRegistry registry,
+                                    @Value("${crm.session-footprint.warn-size:2MB}") DataSize warnSize,
+                                    @Value("${crm.session-footprint.lean-size:5MB}") DataSize leanSize,
+                                    @Value("${crm.session-footprint.depth:5}") int depth,
+                                    @Value("${crm.session-footprint.min-component-size:16KB}") DataSize minComponentSize) {
+        this.sessionMetrics = sessionMetrics;
+        this.warnBytes = warnSize.toBytes();
+        this.leanBytes = leanSize.toBytes();
+        this.depth = depth;
+        this.minComponentBytes = minComponentSize.toBytes();
+        Gauge.builder("crm.vaadin.session.size", footprints,
+                        all -> all.values().stream().mapToLong(SessionFootprint::bytes).sum())
+                .description("Estimated serialized size of all Vaadin sessions")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Whether the session went over its budget, views check it when they are created.
+     */
+    public static boolean isLeanMode(VaadinSession session) {
+        return session != null && Boolean.TRUE.equals(session.getAttribute(LEAN_MODE_ATTRIBUTE));
+    }
+
+    /**
+     * The latest footprints, largest first.
+     */
+    public List<SessionFootprint> footprints() {
+        return footprints.values().stream()
+                .sorted(Comparator.comparingLong(SessionFootprint::bytes).reversed())
+                .toList();
+    }
+
+    /**
+     * Measures every open session. The returned future completes once all of them were measured,
+     * which for the calling session only happens after the current request released the lock.
+     */
+    @Scheduled(fixedDelayString = "${crm.session-footprint.interval:PT5M}",
+            initialDelayString = "${crm.session-footprint.interval:PT5M}")
+    public CompletableFuture<Void> analyzeAll() {
+        Set<VaadinSession> sessions = sessionMetrics.sessions();
+        footprints.keySet().retainAll(sessions);
+        List<CompletableFuture<Void>> measured = new ArrayList<>();
+        for (VaadinSession session : sessions) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            // Runs when the session is free, never blocks the scheduler on a busy session.
+            session.access(() -> {
+                try {
+                    if (sessions.contains(session)) {
+                        footprints.put(session, analyze(session));
+                    }
+                } finally {
+                    done.complete(null);
+                }
+            });
+            measured.add(done);
+        }
+        return CompletableFuture.allOf(measured.toArray(CompletableFuture[]::new));
+    }
+
+    // Called with the session lock held.
+    private SessionFootprint analyze(VaadinSession session) {
+        long started = System.nanoTime();
+        List<ComponentFootprint> components = new ArrayList<>();
+        long total = 0;
+        for (UI ui : session.getUIs()) {
+            total += Math.max(0, measure(ui, ui));
+            ui.getChildren().forEach(child -> breakdown(ui, child, "", 1, components));
+        }
+        components.sort(Comparator.comparingLong(ComponentFootprint::bytes).reversed());
+        Budget budget = total >= leanBytes ? Budget.LEAN : total >= warnBytes ? Budget.WARN : Budget.OK;
+        String user = user(session);
+        SessionFootprint previous = footprints.get(session);
+        if (budget != Budget.OK && (previous == null || previous.budget() != budget)) {
+            log.warn("Session of {} reached the {} budget: {} KB (largest: {})", user, budget, total / 1024,
+                    components.isEmpty() ? "-" : components.get(0).path());
+        }
+        if (budget == Budget.LEAN && !isLeanMode(session)) {
+            enterLeanMode(session);
+        }
+        log.debug("Measured the session of {} in {} ms", user, (System.nanoTime() - started) / 1_000_000);
+        return new SessionFootprint(user, session.getUIs().size(), total, budget, Instant.now(),
+                List.copyOf(components));
+    }
+
+    private void breakdown(UI ui, Component component, String parentPath, int level,
+                           List<ComponentFootprint> components) {
+        String path = parentPath.isEmpty()
+                ? component.getClass().getSimpleName()
+                : parentPath + " > " + component.getClass().getSimpleName();
+        long bytes = measure(ui, component);
+        if (bytes < minComponentBytes) {
+            return; // Its children are even smaller.
+        }
+        components.add(new ComponentFootprint(path, bytes));
+        if (level < depth) {
+            component.getChildren().forEach(child -> breakdown(ui, child, path, level + 1, components));
+        }
+    }
+
+    private static void enterLeanMode(VaadinSession session) {
+        session.setAttribute(LEAN_MODE_ATTRIBUTE, Boolean.TRUE);
+        for (UI ui : session.getUIs()) {
+            ui.getInternals().getActiveRouterTargetsChain().stream()
+                    .filter(LeanModeAware.class::isInstance)
+                    .forEach(view -> ((LeanModeAware) view).enterLeanMode());
+        }
+    }
+
+    private static String user(VaadinSession session) {
+        Object context = session.getSession() == null ? null : session.getSession()
+                .getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+        if (context instanceof SecurityContext securityContext && securityContext.getAuthentication() != null) {
+            return securityContext.getAuthentication().getName();
+        }
+        return "(anonymous)";
+    }
+
+    /**
+     * The serialized size of the component and its children, or -1 when it can't be serialized.
+     * The rest of the UI (parents, siblings, the session) is left out.
+     */
+    private static long measure(UI ui, Component root) {
+        Set<StateNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        root.getElement().getNode().visitNodeTree(nodes::add);
+        Predicate<Object> outside = object -> object instanceof VaadinSession
+                || object instanceof VaadinService
+                || object instanceof StateTree
+                || (object instanceof UI && object != root)
+                || (object instanceof StateNode node && !nodes.contains(node))
+                || (object instanceof Component component && !nodes.contains(component.getElement().getNode()));
+        ByteCounter counter = new ByteCounter();
+        try (ObjectOutputStream out = new MeasuringOutputStream(counter, root, outside)) {
+            out.writeObject(root);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not measure {} of UI {}", root.getClass().getSimpleName(), ui.getUIId(), e);
+            return -1;
+        }
+        return counter.count;
+    }
+
+    /**
+     * Writes the object graph, leaving out shared and non-serializable objects instead of failing on them.
+     */
+    private static class MeasuringOutputStream extends ObjectOutputStream {
+        private final Object root;
+        private final Predicate<Object> outside;
+
+        MeasuringOutputStream(OutputStream out, Object root, Predicate<Object> outside) throws IOException {
+            super(out);
+            this.root = root;
+            this.outside = outside;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object object) {
+            if (object == root) {
+                return object;
+            }
+            if (!(object instanceof Serializable) || outside.test(object)) {
+                return null;
+            }
+            return object;
+        }
+    }
+
+    private static class ByteCounter extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
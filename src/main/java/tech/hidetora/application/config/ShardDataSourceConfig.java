@@ -0,0 +1,73 @@
+package tech.hidetora.application.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Opt-in horizontal sharding of the contacts, activated with the shards profile (see application-shards.properties).
+ * <p>
+ * Replaces the data source of Spring Boot with a connection pool to each of crm.shards.urls, all with the
+ * spring.datasource credentials and spring.datasource.hikari settings. Every shard gets the full schema
+ * (and the demo data, if enabled) from Flyway, then db/shard/common deletes the contacts of the companies of the
+ * other shards and gives its id sequence a range of its own, and db/shard/&lt;vendor&gt; makes the database sort texts
+ * by code point, like the merges of ContactShardingAspect. The contacts of company c live on shard c mod the number
+ * of shards: ContactShards binds a shard to the threads doing its work, ShardRoutingDataSource routes them to it,
+ * and ContactShardingAspect spreads the calls to CrmService over the shards.
+ * <p>
+ * The shards must be new databases: existing ones are not split, and the number of shards can't change later.
+ */
+@Configuration
+@Profile("shards")
+@Slf4j
+public class ShardDataSourceConfig {
+    // Ids of shard n start at ID_BASE + n * ID_RANGE.
+    private static final long ID_BASE = 1000;
+    private static final long ID_RANGE = 1_000_000_000_000L;
+
+    @Bean
+    ShardRoutingDataSource dataSource(DataSourceProperties properties, Environment environment,
+                                      MeterRegistry registry,
+                                      @Value("${crm.shards.urls}") String[] urls,
+                                      @Value("${crm.shards.flyway-locations}") String[] locations) {
+        if (environment.acceptsProfiles(Profiles.of("replicas"))) {
+            throw new IllegalStateException("The shards and replicas profiles can't be combined");
+        }
+        List<String> shardUrls = Stream.of(urls).map(String::trim).filter(StringUtils::hasText).toList();
+        List<HikariDataSource> shards = new ArrayList<>();
+        for (String url : shardUrls) {
+            int shard = shards.size();
+            HikariDataSource pool = ConnectionPools.create(properties, environment, registry, url, "shard-" + shard);
+            String vendor = DatabaseDriver.fromJdbcUrl(url).getId();
+            Flyway.configure()
+                    .dataSource(pool)
+                    .locations(Stream.concat(Stream.of(locations).map(String::trim),
+                                    Stream.of("classpath:db/shard/common", "classpath:db/shard/" + vendor))
+                            .toArray(String[]::new))
+                    .placeholders(Map.of(
+                            "shard", String.valueOf(shard),
+                            "shardCount", String.valueOf(shardUrls.size()),
+                            "idBase", String.valueOf(ID_BASE + shard * ID_RANGE)))
+                    .load()
+                    .migrate();
+            shards.add(pool);
+        }
+        log.info("Migrated {} shards", shards.size());
+        return new ShardRoutingDataSource(shards);
+    }
+}
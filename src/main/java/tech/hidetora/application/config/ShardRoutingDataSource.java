@@ -0,0 +1,124 @@
+package tech.hidetora.application.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import tech.hidetora.application.data.shard.ContactShards;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives every thread connections to the shard bound to it by ContactShards, and the home shard (the first one)
+ * to threads without a shard.
+ * <p>
+ * Statuses and companies are reference data: they are changed on the home shard, and copied from there to the
+ * other shards on startup and every crm.shards.reference-data-sync-interval. Contacts of a new company can be
+ * saved once it was copied. Only the name and the version are copied. The employee counters (CompanyCounter) are
+ * not reference data: every shard counts the contacts it holds, so the counter of a company is only right on the
+ * shard of its contacts. They are not in the second-level cache, which is shared by the shards.
+ */
+@Slf4j
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    // The reference data tables, and the column copied besides the id and the version.
+    private static final Map<String, String> REFERENCE_TABLES = Map.of("status", "name", "company", "name");
+
+    private final List<HikariDataSource> shards;
+
+    public ShardRoutingDataSource(List<HikariDataSource> shards) {
+        this.shards = shards;
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ContactShards.current();
+    }
+
+    @Scheduled(fixedDelayString = "${crm.shards.reference-data-sync-interval:PT1M}")
+    public void syncReferenceData() {
+        for (Map.Entry<String, String> table : REFERENCE_TABLES.entrySet()) {
+            Map<Long, Object[]> home;
+            try (Connection connection = shards.get(0).getConnection()) {
+                home = read(connection, table.getKey(), table.getValue());
+            } catch (SQLException e) {
+                log.warn("Could not read the {} table of the home shard", table.getKey(), e);
+                continue;
+            }
+            for (int shard = 1; shard < shards.size(); shard++) {
+                try (Connection connection = shards.get(shard).getConnection()) {
+                    int copied = copy(connection, table.getKey(), table.getValue(), home);
+                    if (copied > 0) {
+                        log.info("Copied {} {} rows to shard {}", copied, table.getKey(), shard);
+                    }
+                } catch (SQLException e) {
+                    log.warn("Could not copy the {} table to shard {}", table.getKey(), shard, e);
+                }
+            }
+        }
+    }
+
+    // Id -> version and value of every row.
+    private static Map<Long, Object[]> read(Connection connection, String table, String column) throws SQLException {
+        Map<Long, Object[]> rows = new LinkedHashMap<>();
+        try (PreparedStatement select = connection.prepareStatement(
+                "select id, version, " + column + " from " + table);
+             ResultSet result = select.executeQuery()) {
+            while (result.next()) {
+                rows.put(result.getLong(1), new Object[]{result.getInt(2), result.getObject(3)});
+            }
+        }
+        return rows;
+    }
+
+    private static int copy(Connection connection, String table, String column, Map<Long, Object[]> home)
+            throws SQLException {
+        Map<Long, Object[]> current = read(connection, table, column);
+        int copied = 0;
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into " + table + " (id, version, " + column + ") values (?, ?, ?)");
+             PreparedStatement update = connection.prepareStatement(
+                     "update " + table + " set version = ?, " + column + " = ? where id = ?")) {
+            for (Map.Entry<Long, Object[]> row : home.entrySet()) {
+                Object[] existing = current.get(row.getKey());
+                if (existing == null) {
+                    insert.setLong(1, row.getKey());
+                    insert.setInt(2, (Integer) row.getValue()[0]);
+                    insert.setObject(3, row.getValue()[1]);
+                    insert.addBatch();
+                    copied++;
+                } else if (!existing[0].equals(row.getValue()[0])) {
+                    update.setInt(1, (Integer) row.getValue()[0]);
+                    update.setObject(2, row.getValue()[1]);
+                    update.setLong(3, row.getKey());
+                    update.addBatch();
+                    copied++;
+                }
+            }
+            insert.executeBatch();
+            update.executeBatch();
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+        return copied;
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,44 @@
+package tech.hidetora.application.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aot.AotDetector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Logs how long the application took to become ready, counted from the start of the JVM:
+ * "Ready to accept traffic in ... ms". Measured once every ApplicationReadyEvent listener has run,
+ * so it includes the search index and statistics loaded on startup.
+ * <p>
+ * With crm.startup.exit-after-ready the application stops right after, for startup measurements and for the
+ * training run of the class data sharing archive (see src/fast-startup).
+ */
+@Component
+@Slf4j
+public class StartupReport {
+    @Value("${crm.startup.exit-after-ready:false}")
+    private boolean exitAfterReady;
+
+    @EventListener
+    public void onReadiness(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC) {
+            return;
+        }
+        List<String> jvmArguments = ManagementFactory.getRuntimeMXBean().getInputArguments();
+        boolean sharedArchive = jvmArguments.stream().anyMatch(argument -> argument.startsWith("-XX:SharedArchiveFile"));
+        log.info("Ready to accept traffic in {} ms (AOT: {}, CDS archive: {})",
+                ManagementFactory.getRuntimeMXBean().getUptime(), AotDetector.useGeneratedArtifacts(), sharedArchive);
+        if (exitAfterReady) {
+            // Not from the thread that is still publishing the event.
+            new Thread(() -> System.exit(SpringApplication.exit(event.getApplicationContext())), "exit-after-ready")
+                    .start();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package tech.hidetora.application.config;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.ServiceInitEvent;
+import com.vaadin.flow.server.VaadinServiceInitListener;
+import com.vaadin.flow.server.VaadinSession;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gauges for the Vaadin sessions held in memory: crm.vaadin.sessions, crm.vaadin.uis (open browser tabs)
+ * and crm.vaadin.state-nodes, the number of server-side component nodes of all UIs.
+ * <p>
+ * Every component a view shows is a state node with its properties and listeners, so the node count is
+ * a cheap estimate of the memory the sessions use. It needs the session lock, so it is sampled every
+ * crm.metrics.session-sample-interval through VaadinSession.access() instead of being read by the gauge.
+ */
+@Component
+@Slf4j
+public class VaadinSessionMetrics implements VaadinServiceInitListener {
+    private final Set<VaadinSession> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger uis = new AtomicInteger();
+    // The last sampled node count of every session.
+    private final Map<VaadinSession, Integer> stateNodes = new ConcurrentHashMap<>();
+
+    public VaadinSessionMetrics(MeterRegistry registry) {
+        Gauge.builder("crm.vaadin.sessions", sessions, Set::size)
+                .description("Open Vaadin sessions")
+                .register(registry);
+        Gauge.builder("crm.vaadin.uis", uis, AtomicInteger::get)
+                .description("Open Vaadin UIs (browser tabs)")
+                .register(registry);
+        Gauge.builder("crm.vaadin.state-nodes", stateNodes,
+                        nodes -> nodes.values().stream().mapToInt(Integer::intValue).sum())
+                .description("Server-side component nodes of all UIs, sampled")
+                .register(registry);
+    }
+
+    @Override
+    public void serviceInit(ServiceInitEvent event) {
+        event.getSource().addSessionInitListener(e -> sessions.add(e.getSession()));
+        event.getSource().addSessionDestroyListener(e -> {
+            sessions.remove(e.getSession());
+            stateNodes.remove(e.getSession());
+        });
+        event.getSource().addUIInitListener(e -> {
+            uis.incrementAndGet();
+            e.getUI().addDetachListener(detach -> uis.decrementAndGet());
+        });
+    }
+
+    /**
+     * The open sessions. Anything read from a session must be read inside VaadinSession.access().
+     */
+    public Set<VaadinSession> sessions() {
+        return Collections.unmodifiableSet(sessions);
+    }
+
+    @Scheduled(fixedDelayString = "${crm.metrics.session-sample-interval:PT1M}")
+    public void sampleStateNodes() {
+        for (VaadinSession session : sessions) {
+            // Runs when the session is free, never blocks the scheduler on a busy session.
+            session.access(() -> {
+                int nodes = 0;
+                for (UI ui : session.getUIs()) {
+                    nodes += countNodes(ui);
+                }
+                if (sessions.contains(session)) {
+                    stateNodes.put(session, nodes);
+                }
+            });
+        }
+    }
+
+    private static int countNodes(UI ui) {
+        AtomicInteger count = new AtomicInteger();
+        ui.getInternals().getStateTree().getRootNode().visitNodeTree(node -> count.incrementAndGet());
+        return count.get();
+    }
+}
@@ -0,0 +1,36 @@
+package tech.hidetora.application.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Opt-in virtual threads for request handling, activated with the virtual-threads profile
+ * (see application-virtual-threads.properties for the matching connection pool and query executor settings).
+ * <p>
+ * Tomcat then serves every request on a new virtual thread instead of its pool of 200 platform threads,
+ * so requests waiting for JDBC or BCrypt no longer use up the threads needed by other requests.
+ * Needs Java 21 or later: on older JVMs a warning is logged and Tomcat keeps its thread pool.
+ */
+@Configuration
+@Profile("virtual-threads")
+@Slf4j
+public class VirtualThreadsConfig {
+
+    @Bean
+    TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler() {
+        return protocolHandler -> {
+            ExecutorService executor = QueryExecutor.newVirtualThreadPerTaskExecutor();
+            if (executor == null) {
+                log.warn("The virtual-threads profile needs Java 21 or later, Tomcat keeps its platform thread pool");
+                return;
+            }
+            protocolHandler.setExecutor(executor);
+            log.info("Tomcat handles requests on virtual threads");
+        };
+    }
+}
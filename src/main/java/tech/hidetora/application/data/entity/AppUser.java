@@ -0,0 +1,39 @@
+package tech.hidetora.application.data.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A user who can log in, see AppUserDetailsService.
+ */
+@Entity
+@Table(name = "app_user") // USER is a reserved word in most databases.
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppUser extends AbstractEntity {
+    @NotBlank
+    @Column(unique = true, length = 100)
+    private String username;
+
+    /**
+     * The password hash, prefixed with the id of its encoder, e.g. {bcrypt}$2a$10$...
+     */
+    @NotBlank
+    private String password;
+
+    /**
+     * Comma separated role names without the ROLE_ prefix, e.g. USER,ADMIN.
+     */
+    @NotBlank
+    private String roles;
+
+    private boolean enabled = true;
+}
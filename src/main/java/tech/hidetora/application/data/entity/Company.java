@@ -1,16 +1,22 @@
 package tech.hidetora.application.data.entity;
 
 import jakarta.annotation.Nullable;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.OneToMany;
 import jakarta.validation.constraints.NotBlank;
 import lombok.*;
-import org.hibernate.annotations.Formula;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import tech.hidetora.application.config.ReferenceDataCacheConfig;
 
 import java.util.LinkedList;
 import java.util.List;
 
 @Entity
+// Reference data: kept in the second-level cache, see ReferenceDataCacheConfig.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ReferenceDataCacheConfig.COMPANY_REGION)
 @Builder
 @Getter
 @Setter
@@ -23,11 +29,4 @@ public class Company extends AbstractEntity {
     @OneToMany(mappedBy = "company")
     @Nullable
     private List<Contact> employees = new LinkedList<>();
-
-    @Formula("(select count(c.id) from Contact c where c.company_id = id)")
-    private int employeeCount;
-
-    public int getEmployeeCount(){
-        return employeeCount;
-    }
 }
@@ -0,0 +1,24 @@
+package tech.hidetora.application.data.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.*;
+
+/**
+ * Number of contacts of a company, kept up to date by CrmService whenever contacts are saved or deleted
+ * and reconciled by CompanyCounterRepairJob.
+ * <p>
+ * Kept out of Company on purpose: companies live in the second-level cache, and every bulk update of a counter
+ * would evict the whole company region and the cached company queries. The counters are not cached and have
+ * no version, the updates are atomic in the database.
+ */
+@Entity
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompanyCounter {
+    @Id
+    private Long companyId;
+
+    private int employeeCount;
+}
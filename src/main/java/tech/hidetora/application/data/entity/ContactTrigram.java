@@ -0,0 +1,47 @@
+package tech.hidetora.application.data.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * One row of the contact search index: a three character slice of one searchable field of a contact.
+ * The weight says how much a match on that field counts when ranking results
+ * (names rank above the company name, which ranks above the email).
+ */
+@Entity
+@IdClass(ContactTrigram.Key.class)
+@Table(indexes = @Index(name = "idx_contact_trigram_gram", columnList = "trigram, contactId"))
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContactTrigram {
+    @Id
+    private Long contactId;
+
+    @Id
+    @Column(length = 1)
+    private String field;
+
+    @Id
+    @Column(length = 3)
+    private String trigram;
+
+    private int weight;
+
+    @Getter
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long contactId;
+        private String field;
+        private String trigram;
+    }
+}
@@ -0,0 +1,23 @@
+package tech.hidetora.application.data.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * The time the primary database was last written by ReplicaRoutingDataSource, in epoch milliseconds.
+ * Its age on a replica is how far that replica lags behind. Written and read with plain JDBC,
+ * mapped here so development databases created by Hibernate have the table too.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class ReplicationHeartbeat {
+    @Id
+    private Long id;
+
+    private long beatMillis;
+}
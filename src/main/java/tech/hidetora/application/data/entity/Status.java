@@ -1,9 +1,16 @@
 package tech.hidetora.application.data.entity;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import tech.hidetora.application.config.ReferenceDataCacheConfig;
 
 @Entity
+// Reference data: kept in the second-level cache, see ReferenceDataCacheConfig.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ReferenceDataCacheConfig.STATUS_REGION)
 @Getter
 @Setter
 @Builder
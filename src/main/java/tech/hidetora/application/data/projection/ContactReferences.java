@@ -0,0 +1,7 @@
+package tech.hidetora.application.data.projection;
+
+/**
+ * The company and status a contact references in the database.
+ */
+public record ContactReferences(Long companyId, Long statusId) {
+}
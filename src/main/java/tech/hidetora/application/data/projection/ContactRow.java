@@ -0,0 +1,16 @@
+package tech.hidetora.application.data.projection;
+
+import java.io.Serializable;
+
+/**
+ * What the contact grid shows of a contact: the plain columns plus the names of its status and company.
+ * Loaded with a single select that joins the status and company, instead of loading the entities
+ * (and their associations) for every row.
+ */
+public record ContactRow(Long id,
+                         String firstName,
+                         String lastName,
+                         String email,
+                         String statusName,
+                         String companyName) implements Serializable {
+}
@@ -0,0 +1,7 @@
+package tech.hidetora.application.data.projection;
+
+/**
+ * Number of contacts per company or status id, as returned by the group by queries of ContactRepository.
+ */
+public record IdCount(Long id, Long count) {
+}
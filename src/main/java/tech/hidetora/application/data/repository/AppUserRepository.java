@@ -0,0 +1,21 @@
+package tech.hidetora.application.data.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tech.hidetora.application.data.entity.AppUser;
+
+import java.util.Optional;
+
+public interface AppUserRepository extends JpaRepository<AppUser, Long> {
+
+    Optional<AppUser> findByUsername(String username);
+
+    /**
+     * Replaces the password hash without loading the user, used when a hash is upgraded on login.
+     */
+    @Modifying
+    @Query("update AppUser u set u.password = :password, u.version = u.version + 1 where u.username = :username")
+    int updatePassword(@Param("username") String username, @Param("password") String password);
+}
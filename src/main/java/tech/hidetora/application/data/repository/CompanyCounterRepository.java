@@ -0,0 +1,37 @@
+package tech.hidetora.application.data.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tech.hidetora.application.data.entity.CompanyCounter;
+
+public interface CompanyCounterRepository extends JpaRepository<CompanyCounter, Long> {
+    /**
+     * Adds delta to the employee counter of the company. The update runs in the database, so concurrent saves
+     * can't lose increments. Counters are created with their companies (see V4__company_counter.sql and data.sql),
+     * a company inserted without one is counted once CompanyCounterRepairJob added its counter.
+     * Returns the number of updated counters, 0 for such a company.
+     */
+    @Modifying
+    @Query("update CompanyCounter cc set cc.employeeCount = cc.employeeCount + :delta where cc.companyId = :id")
+    int adjustEmployeeCount(@Param("id") Long companyId, @Param("delta") int delta);
+
+    /**
+     * Creates a zero counter for every company without one (companies inserted by SQL scripts or other tools).
+     */
+    @Modifying
+    @Query("insert into CompanyCounter (companyId, employeeCount) select co.id, 0 from Company co " +
+            "where not exists (select 1 from CompanyCounter cc where cc.companyId = co.id)")
+    int addMissingCounters();
+
+    /**
+     * Recounts the contacts of every company whose counter drifted, returns how many were fixed.
+     */
+    @Modifying
+    @Query("update CompanyCounter cc set cc.employeeCount = " +
+            "(select cast(count(c) as Integer) from Contact c where c.company.id = cc.companyId) " +
+            "where cc.employeeCount <> " +
+            "(select cast(count(c) as Integer) from Contact c where c.company.id = cc.companyId)")
+    int reconcileEmployeeCounts();
+}
@@ -1,8 +1,17 @@
 package tech.hidetora.application.data.repository;
 
+import jakarta.persistence.QueryHint;
 import tech.hidetora.application.data.entity.Company;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 
-public interface CompanyRepository extends JpaRepository<Company, Long> {
+import java.util.List;
 
+public interface CompanyRepository extends JpaRepository<Company, Long> {
+    /**
+     * Served from the query cache until a company is written or the cache entry expires.
+     */
+    @Override
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    List<Company> findAll();
 }
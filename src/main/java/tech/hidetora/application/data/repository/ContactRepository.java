@@ -1,13 +1,57 @@
 package tech.hidetora.application.data.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
+import tech.hidetora.application.data.entity.Company;
 import tech.hidetora.application.data.entity.Contact;
+import tech.hidetora.application.data.entity.Status;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.repository.query.Param;
+import tech.hidetora.application.data.projection.ContactReferences;
+import tech.hidetora.application.data.projection.ContactRow;
+import tech.hidetora.application.data.projection.IdCount;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface ContactRepository extends JpaRepository<Contact, Long> {
+    /**
+     * Shared by the search queries below, so the listed, paged and counted results always agree.
+     */
+    String SEARCH_PREDICATE = "(lower(c.firstName) like lower(concat('%', :searchTerm, '%')) " +
+            "or lower(c.lastName) like lower(concat('%', :searchTerm, '%')))";
+    String SEARCH_FILTER = "where " + SEARCH_PREDICATE;
+
+    /**
+     * Keyset (seek) condition: everything strictly after the cursor in (lastName, firstName, id) order.
+     * Backed by the idx_contact_keyset index, so the database seeks straight to the cursor
+     * instead of walking and discarding all the rows before it like an offset does.
+     */
+    String KEYSET_AFTER = "(c.lastName > :lastName " +
+            "or (c.lastName = :lastName and c.firstName > :firstName) " +
+            "or (c.lastName = :lastName and c.firstName = :firstName and c.id > :id))";
+    String KEYSET_ORDER = " order by c.lastName, c.firstName, c.id";
+
+    /**
+     * Selects ContactRow projections, joining the status and company in the same statement.
+     */
+    String ROW_SELECT = "select new tech.hidetora.application.data.projection.ContactRow(" +
+            "c.id, c.firstName, c.lastName, c.email, s.name, co.name) " +
+            "from Contact c join c.status s join c.company co ";
+
+    /**
+     * Selects contacts together with their company and status, for the streaming queries.
+     */
+    String STREAM_SELECT = "select c from Contact c left join fetch c.company left join fetch c.status ";
+
     /**
      * Use the @Query annotation to define a custom query
      * In this case, it checks if the string matches the first or the last name,
@@ -15,8 +59,180 @@ public interface ContactRepository extends JpaRepository<Contact, Long> {
      * The query uses Java Persistence Query Language (JPQL) which is an SQL-like
      * language for querying JPA-managed databases.
      */
-    @Query("select c from Contact c " +
-            "where lower(c.firstName) like lower(concat('%', :searchTerm, '%')) " +
-            "or lower(c.lastName) like lower(concat('%', :searchTerm, '%'))")
+    @Query("select c from Contact c " + SEARCH_FILTER)
     List<Contact> search(@Param("searchTerm") String searchTerm);
+
+    /**
+     * Same search, but only the window described by the Pageable is fetched.
+     * Spring Data appends the order by and the limit/offset to the query.
+     */
+    @EntityGraph(attributePaths = {"company", "status"})
+    @Query("select c from Contact c " + SEARCH_FILTER)
+    List<Contact> search(@Param("searchTerm") String searchTerm, Pageable pageable);
+
+    @EntityGraph(attributePaths = {"company", "status"})
+    @Query("select c from Contact c " + SEARCH_FILTER)
+    List<Contact> search(@Param("searchTerm") String searchTerm, Sort sort);
+
+    /**
+     * The contacts found by the trigram search index, in the order given by the Pageable.
+     */
+    @EntityGraph(attributePaths = {"company", "status"})
+    @Query("select c from Contact c where " + ContactTrigramRepository.INDEXED_MATCH)
+    List<Contact> searchIndexed(@Param("searchTerm") String searchTerm,
+                                @Param("trigrams") Collection<String> trigrams,
+                                @Param("trigramCount") long trigramCount,
+                                Pageable pageable);
+
+    @Query("select count(c) from Contact c " + SEARCH_FILTER)
+    long countSearch(@Param("searchTerm") String searchTerm);
+
+    /**
+     * A page of all contacts. Unlike findAll(Pageable) this returns a plain list,
+     * so no extra count query is issued for every page the grid asks for.
+     */
+    @EntityGraph(attributePaths = {"company", "status"})
+    @Query("select c from Contact c")
+    List<Contact> findPage(Pageable pageable);
+
+    /**
+     * The next page after the given cursor. Only the page size of the Pageable is used,
+     * the order is always the keyset order.
+     */
+    @EntityGraph(attributePaths = {"company", "status"})
+    @Query("select c from Contact c where " + KEYSET_AFTER + KEYSET_ORDER)
+    List<Contact> findPageAfter(@Param("lastName") String lastName,
+                                @Param("firstName") String firstName,
+                                @Param("id") Long id,
+                                Pageable pageable);
+
+    @EntityGraph(attributePaths = {"company", "status"})
+    @Query("select c from Contact c where " + SEARCH_PREDICATE + " and " + KEYSET_AFTER + KEYSET_ORDER)
+    List<Contact> searchPageAfter(@Param("searchTerm") String searchTerm,
+                                  @Param("lastName") String lastName,
+                                  @Param("firstName") String firstName,
+                                  @Param("id") Long id,
+                                  Pageable pageable);
+
+    @Override
+    @EntityGraph(attributePaths = {"company", "status"})
+    Optional<Contact> findById(Long id);
+
+    /**
+     * The company and status the contact currently has in the database, ignoring any unsaved change.
+     */
+    @Query("select new tech.hidetora.application.data.projection.ContactReferences(co.id, s.id) " +
+            "from Contact c left join c.company co left join c.status s where c.id = :id")
+    ContactReferences findReferences(@Param("id") Long id);
+
+    @Query("select new tech.hidetora.application.data.projection.IdCount(c.company.id, count(c)) " +
+            "from Contact c group by c.company.id")
+    List<IdCount> countByCompany();
+
+    @Query("select new tech.hidetora.application.data.projection.IdCount(c.status.id, count(c)) " +
+            "from Contact c group by c.status.id")
+    List<IdCount> countByStatus();
+
+    /**
+     * Like countByCompany(), limited to the given contacts.
+     */
+    @Query("select new tech.hidetora.application.data.projection.IdCount(c.company.id, count(c)) " +
+            "from Contact c where c.id in :ids group by c.company.id")
+    List<IdCount> countByCompanyForIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Like countByStatus(), limited to the given contacts.
+     */
+    @Query("select new tech.hidetora.application.data.projection.IdCount(c.status.id, count(c)) " +
+            "from Contact c where c.id in :ids group by c.status.id")
+    List<IdCount> countByStatusForIds(@Param("ids") Collection<Long> ids);
+
+    // Set-based bulk changes. Every statement changes any number of contacts at once, without loading them,
+    // and increments their versions so forms still editing one of them get an optimistic locking error.
+    // Contacts that already have the new value are left alone.
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Contact c set c.status = :status, c.version = c.version + 1 " +
+            "where c.id in :ids and (c.status is null or c.status <> :status)")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") Status status);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Contact c set c.company = :company, c.version = c.version + 1 " +
+            "where c.id in :ids and (c.company is null or c.company <> :company)")
+    int updateCompany(@Param("ids") Collection<Long> ids, @Param("company") Company company);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Contact c where c.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Inserts a contact with the given id instead of one from the sequence, for contacts moved between shards.
+     */
+    @Modifying
+    @Query("insert into Contact (id, version, firstName, lastName, email, company, status) " +
+            "values (:id, :version, :firstName, :lastName, :email, :company, :status)")
+    int insertWithId(@Param("id") Long id, @Param("version") int version, @Param("firstName") String firstName,
+                     @Param("lastName") String lastName, @Param("email") String email,
+                     @Param("company") Company company, @Param("status") Status status);
+
+    /**
+     * Contacts by id, with their company and status fetched in the same statement.
+     */
+    @EntityGraph(attributePaths = {"company", "status"})
+    @Query("select c from Contact c where c.id in :ids")
+    List<Contact> findAllWithReferencesByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * The first contacts with ids above afterId and up to lastId, in id order, with their company.
+     */
+    @EntityGraph(attributePaths = {"company"})
+    @Query("select c from Contact c where c.id > :afterId and c.id <= :lastId order by c.id")
+    List<Contact> findPageInIdRange(@Param("afterId") long afterId, @Param("lastId") long lastId, Pageable pageable);
+
+    // The ContactRow variants of the queries above, used by the contact grid.
+
+    @Query(ROW_SELECT)
+    List<ContactRow> findRows(Pageable pageable);
+
+    @Query(ROW_SELECT + SEARCH_FILTER)
+    List<ContactRow> searchRows(@Param("searchTerm") String searchTerm, Pageable pageable);
+
+    @Query(ROW_SELECT + "where " + KEYSET_AFTER + KEYSET_ORDER)
+    List<ContactRow> findRowsAfter(@Param("lastName") String lastName,
+                                   @Param("firstName") String firstName,
+                                   @Param("id") Long id,
+                                   Pageable pageable);
+
+    @Query(ROW_SELECT + "where " + ContactTrigramRepository.INDEXED_MATCH)
+    List<ContactRow> searchIndexedRows(@Param("searchTerm") String searchTerm,
+                                       @Param("trigrams") Collection<String> trigrams,
+                                       @Param("trigramCount") long trigramCount,
+                                       Pageable pageable);
+
+    @Query(ROW_SELECT + "where c.id in :ids")
+    List<ContactRow> findRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Streaming variants for exports. The rows are fetched from the database in slices of the fetch size
+    // while the stream is consumed, and the entities are read-only, so Hibernate keeps no snapshots of them.
+    // The stream must be consumed and closed inside a transaction.
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query(STREAM_SELECT + KEYSET_ORDER)
+    Stream<Contact> streamAll();
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query(STREAM_SELECT + SEARCH_FILTER + KEYSET_ORDER)
+    Stream<Contact> streamSearch(@Param("searchTerm") String searchTerm);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query(STREAM_SELECT + "where " + ContactTrigramRepository.INDEXED_MATCH + KEYSET_ORDER)
+    Stream<Contact> streamIndexed(@Param("searchTerm") String searchTerm,
+                                  @Param("trigrams") Collection<String> trigrams,
+                                  @Param("trigramCount") long trigramCount);
 }
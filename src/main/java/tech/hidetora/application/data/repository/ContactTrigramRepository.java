@@ -0,0 +1,62 @@
+package tech.hidetora.application.data.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tech.hidetora.application.data.entity.ContactTrigram;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ContactTrigramRepository extends JpaRepository<ContactTrigram, ContactTrigram.Key> {
+    /**
+     * Ids of the contacts that contain every trigram of the search term in one of their indexed fields.
+     * Only the trigram index is read, the CONTACT table is never scanned.
+     * The trigrams narrow the search down to candidates, which aren't necessarily matches:
+     * "john" has the trigrams of "Johanna Kohn". Combine it with INDEXED_FIELDS_CONTAIN.
+     */
+    String MATCHING_CONTACT_IDS = "select t.contactId from ContactTrigram t where t.trigram in :trigrams " +
+            "group by t.contactId having count(distinct t.trigram) = :trigramCount";
+
+    /**
+     * The recheck of the candidates: the whole term, short words included, is part of one of the indexed fields,
+     * like the LIKE search checks it for the names. Only evaluated for the candidates of the index.
+     */
+    String INDEXED_FIELDS_CONTAIN = "(lower(c.firstName) like lower(concat('%', :searchTerm, '%')) " +
+            "or lower(c.lastName) like lower(concat('%', :searchTerm, '%')) " +
+            "or lower(c.email) like lower(concat('%', :searchTerm, '%')) " +
+            "or lower(c.company.name) like lower(concat('%', :searchTerm, '%')))";
+
+    /**
+     * The contacts matching the term: the candidates of the index that pass the recheck.
+     */
+    String INDEXED_MATCH = "c.id in (" + MATCHING_CONTACT_IDS + ") and " + INDEXED_FIELDS_CONTAIN;
+
+    /**
+     * The matching contact ids, best match first: the more (and the more important) fields a term hits,
+     * the higher the contact ranks.
+     */
+    @Query("select t.contactId from ContactTrigram t join Contact c on c.id = t.contactId " +
+            "where t.trigram in :trigrams and " + INDEXED_FIELDS_CONTAIN + " " +
+            "group by t.contactId having count(distinct t.trigram) = :trigramCount " +
+            "order by sum(t.weight) desc, t.contactId")
+    List<Long> searchRanked(@Param("searchTerm") String searchTerm,
+                            @Param("trigrams") Collection<String> trigrams,
+                            @Param("trigramCount") long trigramCount,
+                            Pageable pageable);
+
+    @Query("select count(c) from Contact c where " + INDEXED_MATCH)
+    long countMatches(@Param("searchTerm") String searchTerm,
+                      @Param("trigrams") Collection<String> trigrams,
+                      @Param("trigramCount") long trigramCount);
+
+    @Modifying
+    @Query("delete from ContactTrigram t where t.contactId in :contactIds")
+    void deleteByContactIds(@Param("contactIds") Collection<Long> contactIds);
+
+    @Modifying
+    @Query("delete from ContactTrigram t where t.contactId in :contactIds and t.field = :field")
+    void deleteByContactIdsAndField(@Param("contactIds") Collection<Long> contactIds, @Param("field") String field);
+}
@@ -1,8 +1,18 @@
 package tech.hidetora.application.data.repository;
 
+import jakarta.persistence.QueryHint;
 import tech.hidetora.application.data.entity.Status;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.List;
 
 public interface StatusRepository extends JpaRepository<Status, Long> {
+    /**
+     * Served from the query cache until a status is written or the cache entry expires.
+     */
+    @Override
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    List<Status> findAll();
 
 }
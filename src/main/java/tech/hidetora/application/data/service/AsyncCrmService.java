@@ -0,0 +1,42 @@
+package tech.hidetora.application.data.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tech.hidetora.application.config.QueryExecutor;
+import tech.hidetora.application.data.projection.ContactRow;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Queries of CrmService on a background thread (see QueryExecutor), for views that must not block while they run.
+ * Cancel the futures when the results are no longer needed, e.g. because the user typed a new filter.
+ * <p>
+ * A bean of its own, so the background thread calls CrmService through its proxy: the queries get their read-only
+ * transaction (and a replica, with the replicas profile), their metrics and, with the shards profile, run on
+ * every shard. The calling thread starts no transaction.
+ */
+@Service
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor
+public class AsyncCrmService {
+    private final CrmService crmService;
+    private final QueryExecutor queryExecutor;
+
+    /**
+     * CrmService.findContactRows(String, Pageable) in the background.
+     */
+    public CompletableFuture<List<ContactRow>> findContactRows(String stringFilter, Pageable pageable) {
+        return queryExecutor.supply(() -> crmService.findContactRows(stringFilter, pageable));
+    }
+
+    /**
+     * CrmService.countContacts(String) in the background.
+     */
+    public CompletableFuture<Long> countContacts(String stringFilter) {
+        return queryExecutor.supply(() -> crmService.countContacts(stringFilter));
+    }
+}
@@ -0,0 +1,33 @@
+package tech.hidetora.application.data.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import tech.hidetora.application.data.repository.CompanyCounterRepository;
+
+/**
+ * Recounts the employees of every company on a schedule.
+ * The counters are maintained incrementally by CrmService, this only fixes drift caused by
+ * writes that bypass the service (SQL scripts, other tools), and adds the counters of companies inserted without one.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CompanyCounterRepairJob {
+    private final CompanyCounterRepository counterRepository;
+
+    @Scheduled(cron = "${crm.company-counters.repair-cron:0 0 3 * * *}")
+    @Transactional
+    public void repair() {
+        int added = counterRepository.addMissingCounters();
+        if (added > 0) {
+            log.warn("Added the missing employee counter of {} companies", added);
+        }
+        int fixed = counterRepository.reconcileEmployeeCounts();
+        if (fixed > 0) {
+            log.warn("Repaired the employee count of {} companies", fixed);
+        }
+    }
+}
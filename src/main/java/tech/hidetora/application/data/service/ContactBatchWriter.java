@@ -0,0 +1,199 @@
+package tech.hidetora.application.data.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.hidetora.application.data.entity.Contact;
+import tech.hidetora.application.data.repository.CompanyCounterRepository;
+import tech.hidetora.application.data.repository.ContactRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Saves many contacts at once, for integrations that push contacts in bulk.
+ * <p>
+ * The contacts are saved in chunks, one transaction per chunk. The stored contacts of a chunk are loaded
+ * with a single query: a contact whose version no longer matches was changed (or deleted) by somebody else
+ * since the caller read it, and is reported as a conflict instead of being saved. The values of the others
+ * are copied onto the loaded contacts, which are written with batched inserts and updates.
+ * <p>
+ * A contact can still be changed between that check and the write. The chunk then fails as a whole
+ * and is saved again one contact at a time, so only the contact that really conflicts is reported.
+ * Use CrmService.saveContacts() to call it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContactBatchWriter {
+    private static final int CHUNK_SIZE = 500;
+
+    private final ContactRepository contactRepository;
+    private final CompanyCounterRepository counterRepository;
+    private final ContactSearchIndex searchIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public enum ConflictPolicy {
+        /**
+         * Conflicting contacts are skipped and reported, nothing the other writer saved is overwritten.
+         */
+        REPORT,
+        /**
+         * The values of a stale contact are copied onto the current version and saved again.
+         * The caller's values win over the concurrent change, only deleted contacts are still reported.
+         */
+        RETRY_WITH_MERGE
+    }
+
+    /**
+     * A contact that wasn't saved.
+     *
+     * @param currentVersion the version in the database, null when the contact was deleted
+     */
+    public record Conflict(Contact contact, Integer currentVersion, String reason) {
+    }
+
+    /**
+     * @param saved  the saved contacts, with their ids and new versions
+     * @param merged how many of them were stale and saved with RETRY_WITH_MERGE
+     */
+    public record BatchSaveResult(List<Contact> saved, int merged, List<Conflict> conflicts) {
+    }
+
+    public BatchSaveResult saveContacts(Collection<Contact> contacts, ConflictPolicy policy) {
+        long started = System.currentTimeMillis();
+        Outcome outcome = new Outcome();
+        List<Contact> all = contacts.stream().filter(Objects::nonNull).toList();
+        for (int from = 0; from < all.size(); from += CHUNK_SIZE) {
+            List<Contact> chunk = all.subList(from, Math.min(from + CHUNK_SIZE, all.size()));
+            try {
+                outcome.add(transactionTemplate.execute(status -> saveChunk(chunk, policy)));
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                // Changed after the version check: find the contact(s) by saving them one by one.
+                log.debug("Concurrent change in a chunk of {} contacts, saving them one by one", chunk.size());
+                for (Contact contact : chunk) {
+                    saveAlone(contact, policy, outcome);
+                }
+            }
+        }
+        log.debug("Saved {} contacts ({} merged, {} conflicts) in {} ms", outcome.saved.size(), outcome.merged,
+                outcome.conflicts.size(), System.currentTimeMillis() - started);
+        return new BatchSaveResult(outcome.saved, outcome.merged, outcome.conflicts);
+    }
+
+    private void saveAlone(Contact contact, ConflictPolicy policy, Outcome outcome) {
+        try {
+            outcome.add(transactionTemplate.execute(status -> saveChunk(List.of(contact), policy)));
+        } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+            outcome.conflicts.add(new Conflict(contact, null, "Changed concurrently while saving"));
+        }
+    }
+
+    private Outcome saveChunk(List<Contact> chunk, ConflictPolicy policy) {
+        entityManager.unwrap(Session.class).setJdbcBatchSize(CHUNK_SIZE);
+        Outcome outcome = new Outcome();
+        Set<Long> ids = chunk.stream().map(Contact::getId).filter(Objects::nonNull).collect(Collectors.toSet());
+        // One query instead of the select merge() would run for every contact.
+        Map<Long, Contact> stored = ids.isEmpty() ? Map.of() : contactRepository.findAllWithReferencesByIdIn(ids)
+                .stream().collect(Collectors.toMap(Contact::getId, Function.identity()));
+        Map<Long, Integer> employeeDeltas = new HashMap<>();
+        ContactChangeEvent.CountChanges counts = new ContactChangeEvent.CountChanges();
+
+        for (Contact contact : chunk) {
+            Contact saved;
+            Long previousCompanyId = null;
+            Long previousStatusId = null;
+            if (contact.getId() == null) {
+                // merge() and not persist(): the caller's instance must not get an id if the chunk rolls back.
+                saved = entityManager.merge(contact);
+            } else {
+                saved = stored.get(contact.getId());
+                if (saved == null) {
+                    outcome.conflicts.add(new Conflict(contact, null, "Deleted by another user"));
+                    continue;
+                }
+                if (saved.getVersion() != contact.getVersion()) {
+                    if (policy == ConflictPolicy.REPORT) {
+                        outcome.conflicts.add(new Conflict(contact, saved.getVersion(), "Changed by another user "
+                                + "(version " + saved.getVersion() + ", expected " + contact.getVersion() + ")"));
+                        continue;
+                    }
+                    outcome.merged++;
+                }
+                previousCompanyId = saved.getCompany() == null ? null : saved.getCompany().getId();
+                previousStatusId = saved.getStatus() == null ? null : saved.getStatus().getId();
+                // The loaded version is checked again by the update itself.
+                copyValues(contact, saved);
+            }
+            Long companyId = saved.getCompany() == null ? null : saved.getCompany().getId();
+            Long statusId = saved.getStatus() == null ? null : saved.getStatus().getId();
+            if (contact.getId() == null) {
+                counts.created(companyId, statusId);
+            } else {
+                counts.moved(previousCompanyId, previousStatusId, companyId, statusId);
+            }
+            if (!Objects.equals(previousCompanyId, companyId)) {
+                if (previousCompanyId != null) {
+                    employeeDeltas.merge(previousCompanyId, -1, Integer::sum);
+                }
+                if (companyId != null) {
+                    employeeDeltas.merge(companyId, 1, Integer::sum);
+                }
+            }
+            outcome.saved.add(saved);
+        }
+        if (outcome.saved.isEmpty()) {
+            return outcome;
+        }
+        // Inserts and updates are sent in ordered JDBC batches, the version checks run with them.
+        entityManager.flush();
+
+        searchIndex.remove(outcome.saved.stream().map(Contact::getId).filter(ids::contains).toList());
+        outcome.saved.forEach(searchIndex::indexNew);
+        employeeDeltas.forEach((companyId, delta) -> {
+            if (delta != 0) {
+                counterRepository.adjustEmployeeCount(companyId, delta);
+            }
+        });
+        eventPublisher.publishEvent(ContactChangeEvent.bulk(counts));
+        return outcome;
+    }
+
+    private static void copyValues(Contact from, Contact to) {
+        to.setFirstName(from.getFirstName());
+        to.setLastName(from.getLastName());
+        to.setEmail(from.getEmail());
+        to.setCompany(from.getCompany());
+        to.setStatus(from.getStatus());
+    }
+
+    private static class Outcome {
+        final List<Contact> saved = new ArrayList<>();
+        final List<Conflict> conflicts = new ArrayList<>();
+        int merged;
+
+        void add(Outcome chunk) {
+            saved.addAll(chunk.saved);
+            conflicts.addAll(chunk.conflicts);
+            merged += chunk.merged;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package tech.hidetora.application.data.service;
+
+import com.vaadin.flow.shared.Registration;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import tech.hidetora.application.data.projection.ContactRow;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Forwards committed contact changes to the open views.
+ * <p>
+ * Changes are collected for a short window (crm.push.batch-window) and delivered as one ContactChangeBatch,
+ * so a burst of writes (e.g. an import) reaches each view as a single refresh instead of one per contact.
+ * For batches that only update existing contacts, the new rows are loaded once here and shared
+ * by all listeners, so each view can refresh just those rows.
+ * Listeners are called from a background thread: views must use UI.access() to apply the changes.
+ */
+@Service
+@Slf4j
+public class ContactChangeBroadcaster {
+    // Above this many changes, refreshing every row separately costs more than reloading the visible page.
+    private static final int MAX_ITEM_REFRESHES = 50;
+
+    private final CrmService service;
+    private final long batchWindowMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "contact-change-broadcaster");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Consumer<ContactChangeBatch>> listeners = new CopyOnWriteArrayList<>();
+    private final List<ContactChangeEvent> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    /**
+     * The changes of one batch window.
+     *
+     * @param structural  whether contacts were created or deleted (or too many changed to refresh row by row):
+     *                    the size and order of lists may have changed, so they must be reloaded.
+     * @param updatedRows the new state of the updated contacts, empty for structural batches
+     */
+    public record ContactChangeBatch(List<ContactChangeEvent> events,
+                                     boolean structural,
+                                     Map<Long, ContactRow> updatedRows) {
+    }
+
+    public ContactChangeBroadcaster(CrmService service,
+                                    @Value("${crm.push.batch-window:PT0.25S}") Duration batchWindow) {
+        this.service = service;
+        this.batchWindowMillis = batchWindow.toMillis();
+    }
+
+    public Registration register(Consumer<ContactChangeBatch> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onContactChange(ContactChangeEvent event) {
+        synchronized (pending) {
+            pending.add(event);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(this::flush, batchWindowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void flush() {
+        List<ContactChangeEvent> events;
+        synchronized (pending) {
+            events = List.copyOf(pending);
+            pending.clear();
+            flushScheduled = false;
+        }
+        if (events.isEmpty() || listeners.isEmpty()) {
+            return;
+        }
+        try {
+            boolean structural = events.size() > MAX_ITEM_REFRESHES || events.stream()
+                    .anyMatch(event -> event.type() != ContactChangeEvent.Type.UPDATED);
+            Map<Long, ContactRow> updatedRows = structural ? Map.of() : service.findContactRows(
+                            events.stream().map(ContactChangeEvent::contactId).collect(Collectors.toSet()))
+                    .stream().collect(Collectors.toMap(ContactRow::id, Function.identity()));
+            ContactChangeBatch batch = new ContactChangeBatch(events, structural, updatedRows);
+            for (Consumer<ContactChangeBatch> listener : listeners) {
+                try {
+                    listener.accept(batch);
+                } catch (RuntimeException e) {
+                    // One closed UI must not keep the others from being updated.
+                    log.debug("Could not deliver contact changes to a listener", e);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not broadcast {} contact changes", events.size(), e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
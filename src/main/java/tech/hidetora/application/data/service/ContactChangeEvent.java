@@ -0,0 +1,99 @@
+package tech.hidetora.application.data.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Published by CrmService whenever a contact is created, updated or deleted.
+ * Carries the company and status before and after the change, so listeners can maintain
+ * aggregates without querying the database. The previous ids are null for created contacts,
+ * the new ones are null for deleted contacts.
+ * <p>
+ * Bulk operations (e.g. an import) publish a single BULK event without ids instead of one event per contact.
+ * It carries the changes of the contact counts instead, summed up over all the contacts of the operation.
+ */
+public record ContactChangeEvent(Type type,
+                                 Long contactId,
+                                 Long previousCompanyId,
+                                 Long previousStatusId,
+                                 Long companyId,
+                                 Long statusId,
+                                 CountChanges counts) {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED, BULK
+    }
+
+    public ContactChangeEvent(Type type, Long contactId, Long previousCompanyId, Long previousStatusId,
+                              Long companyId, Long statusId) {
+        this(type, contactId, previousCompanyId, previousStatusId, companyId, statusId, null);
+    }
+
+    public static ContactChangeEvent bulk(CountChanges counts) {
+        return new ContactChangeEvent(Type.BULK, null, null, null, null, null, counts);
+    }
+
+    /**
+     * How many contacts a bulk operation added (negative: removed) in total, per company id and per status id.
+     * Filled by the operation while it runs, and not changed any more once the event is published.
+     */
+    public static final class CountChanges {
+        private long total;
+        private final Map<Long, Long> byCompany = new HashMap<>();
+        private final Map<Long, Long> byStatus = new HashMap<>();
+
+        public void created(Long companyId, Long statusId) {
+            total++;
+            company(companyId, 1);
+            status(statusId, 1);
+        }
+
+        public void deleted(long contacts) {
+            total -= contacts;
+        }
+
+        public void moved(Long previousCompanyId, Long previousStatusId, Long companyId, Long statusId) {
+            if (!Objects.equals(previousCompanyId, companyId)) {
+                company(previousCompanyId, -1);
+                company(companyId, 1);
+            }
+            if (!Objects.equals(previousStatusId, statusId)) {
+                status(previousStatusId, -1);
+                status(statusId, 1);
+            }
+        }
+
+        public void company(Long companyId, long delta) {
+            add(byCompany, companyId, delta);
+        }
+
+        public void status(Long statusId, long delta) {
+            add(byStatus, statusId, delta);
+        }
+
+        public long total() {
+            return total;
+        }
+
+        public Map<Long, Long> byCompany() {
+            return Collections.unmodifiableMap(byCompany);
+        }
+
+        public Map<Long, Long> byStatus() {
+            return Collections.unmodifiableMap(byStatus);
+        }
+
+        public boolean isEmpty() {
+            return total == 0 && byCompany.isEmpty() && byStatus.isEmpty();
+        }
+
+        private static void add(Map<Long, Long> counts, Long id, long delta) {
+            if (id != null && delta != 0) {
+                // Drops the entry when the changes cancel out.
+                counts.merge(id, delta, (a, b) -> a + b == 0 ? null : a + b);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package tech.hidetora.application.data.service;
+
+import tech.hidetora.application.data.entity.Contact;
+import tech.hidetora.application.data.projection.ContactRow;
+
+import java.io.Serializable;
+
+/**
+ * Position in the (lastName, firstName, id) keyset order.
+ * Pass the cursor of the last contact of a page to get the page that follows it.
+ */
+public record ContactCursor(String lastName, String firstName, Long id) implements Serializable {
+
+    public static ContactCursor of(Contact contact) {
+        return new ContactCursor(contact.getLastName(), contact.getFirstName(), contact.getId());
+    }
+
+    public static ContactCursor of(ContactRow row) {
+        return new ContactCursor(row.lastName(), row.firstName(), row.id());
+    }
+}
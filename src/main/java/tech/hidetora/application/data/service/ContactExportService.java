@@ -0,0 +1,143 @@
+package tech.hidetora.application.data.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tech.hidetora.application.data.entity.Contact;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the contacts matching a filter as CSV or newline delimited JSON.
+ * <p>
+ * The contacts are streamed from the database and written one by one, and the persistence context
+ * is cleared every few hundred contacts, so the memory used doesn't grow with the size of the export.
+ * The columns are the ones ContactImportService reads, so an export can be imported again.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContactExportService {
+    private static final int CLEAR_INTERVAL = 500;
+
+    private final CrmService service;
+    private final ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public enum Format {
+        CSV("csv", "text/csv"), NDJSON("ndjson", "application/x-ndjson");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * Writes every contact matching the filter to the output stream, which is left open.
+     *
+     * @return the number of contacts written
+     */
+    @Transactional(readOnly = true)
+    public long export(String stringFilter, Format format, OutputStream out) throws IOException {
+        long started = System.currentTimeMillis();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        long written;
+        try (Stream<Contact> contacts = service.streamContacts(stringFilter)) {
+            written = format == Format.CSV
+                    ? writeCsv(contacts.iterator(), writer)
+                    : writeNdjson(contacts.iterator(), writer);
+        }
+        writer.flush();
+        log.info("Exported {} contacts as {} in {} ms", written, format, System.currentTimeMillis() - started);
+        return written;
+    }
+
+    private long writeCsv(Iterator<Contact> contacts, Writer writer) throws IOException {
+        writer.write("firstName,lastName,email,company,status\r\n");
+        long written = 0;
+        while (contacts.hasNext()) {
+            Contact contact = contacts.next();
+            writer.write(csv(contact.getFirstName()));
+            writer.write(',');
+            writer.write(csv(contact.getLastName()));
+            writer.write(',');
+            writer.write(csv(contact.getEmail()));
+            writer.write(',');
+            writer.write(csv(contact.getCompany() == null ? null : contact.getCompany().getName()));
+            writer.write(',');
+            writer.write(csv(contact.getStatus() == null ? null : contact.getStatus().getName()));
+            writer.write("\r\n");
+            clearEvery(++written);
+        }
+        return written;
+    }
+
+    private long writeNdjson(Iterator<Contact> contacts, Writer writer) throws IOException {
+        long written = 0;
+        // The generator must not close the writer, the servlet container owns the output stream.
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(writer)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            // One object per line instead of Jackson's default space between root values.
+            json.setRootValueSeparator(new SerializedString("\n"));
+            while (contacts.hasNext()) {
+                Contact contact = contacts.next();
+                json.writeStartObject();
+                json.writeStringField("firstName", contact.getFirstName());
+                json.writeStringField("lastName", contact.getLastName());
+                json.writeStringField("email", contact.getEmail());
+                json.writeStringField("company", contact.getCompany() == null ? null : contact.getCompany().getName());
+                json.writeStringField("status", contact.getStatus() == null ? null : contact.getStatus().getName());
+                json.writeEndObject();
+                clearEvery(++written);
+            }
+            if (written > 0) {
+                json.writeRaw('\n');
+            }
+        }
+        return written;
+    }
+
+    // Forgets the contacts written so far, the scrolled result set keeps adding new ones to the persistence context.
+    private void clearEvery(long written) {
+        if (written % CLEAR_INTERVAL == 0) {
+            entityManager.clear();
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
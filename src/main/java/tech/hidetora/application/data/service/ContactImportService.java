@@ -0,0 +1,360 @@
+package tech.hidetora.application.data.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.hidetora.application.data.entity.Company;
+import tech.hidetora.application.data.entity.Contact;
+import tech.hidetora.application.data.entity.Status;
+import tech.hidetora.application.data.repository.CompanyCounterRepository;
+import tech.hidetora.application.data.shard.ContactShards;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Imports contacts in bulk from CSV or JSON.
+ * <p>
+ * The input is parsed one record at a time and written in chunks: every chunk is one transaction whose
+ * inserts go to the database in JDBC batches, after which the persistence context is cleared.
+ * Memory use therefore doesn't depend on the size of the file.
+ * Company and status names are resolved against the shared reference data, without a query per row.
+ * Rows that can't be imported are skipped and reported, they don't abort the import. Neither do chunks that can't be
+ * written: their rows are reported as failed, and the import goes on with the next chunk.
+ * <p>
+ * The contacts are added to the search index after the load, by id range of the written chunks, instead of
+ * with every chunk: the chunks only insert contacts, and the index is built from pages of contacts read back in
+ * id order. Imported contacts can be found by searches once the import is done.
+ * <p>
+ * CSV files need a header row naming the columns firstName, lastName, email, company and status (in any order).
+ * JSON files contain an array of objects (or one object per line) with the same properties.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContactImportService {
+    private static final int CHUNK_SIZE = 1000;
+    // Only the first errors are kept, an import of a wrong file would otherwise collect millions of them.
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final ReferenceDataService referenceData;
+    private final ContactSearchIndex searchIndex;
+    private final CompanyCounterRepository counterRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ContactShards shards;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Imports run one at a time, in the background.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "contact-import");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public enum Format {
+        CSV, JSON;
+
+        public static Format of(String fileName) {
+            String lower = fileName.toLowerCase(Locale.ROOT);
+            return lower.endsWith(".json") || lower.endsWith(".ndjson") ? JSON : CSV;
+        }
+    }
+
+    public record ImportRow(long line, String firstName, String lastName, String email, String company, String status) {
+    }
+
+    public record RowError(long line, String message) {
+    }
+
+    public record ImportProgress(long processed, long imported, long failed) {
+    }
+
+    public record ImportResult(long imported, long failed, List<RowError> errors, Duration duration) {
+    }
+
+    /**
+     * Imports the file in the background. Progress is reported after every chunk, from the import thread.
+     */
+    public CompletableFuture<ImportResult> startImport(Path file, Format format, Consumer<ImportProgress> progress) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = Files.newInputStream(file)) {
+                return importContacts(in, format, progress);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read " + file, e);
+            }
+        }, executor);
+    }
+
+    public ImportResult importContacts(InputStream in, Format format, Consumer<ImportProgress> progress) throws IOException {
+        long started = System.nanoTime();
+        Lookup lookup = new Lookup(referenceData.refresh());
+        Counts counts = new Counts();
+        List<RowError> errors = new ArrayList<>();
+        List<Contact> chunk = new ArrayList<>(CHUNK_SIZE);
+        List<Long> chunkLines = new ArrayList<>(CHUNK_SIZE);
+        // Per shard, the first and last id of every chunk written, indexed for search after the load.
+        Map<Integer, List<long[]>> written = new ConcurrentHashMap<>();
+
+        Consumer<ImportRow> handleRow = row -> {
+            counts.processed++;
+            String error = lookup.toContact(row, chunk);
+            if (error != null) {
+                counts.failed++;
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add(new RowError(row.line(), error));
+                }
+            } else {
+                chunkLines.add(row.line());
+            }
+            if (chunk.size() == CHUNK_SIZE) {
+                writeChunk(chunk, chunkLines, written, counts, errors);
+                chunk.clear();
+                chunkLines.clear();
+                progress.accept(new ImportProgress(counts.processed, counts.imported, counts.failed));
+            }
+        };
+        try (Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024)) {
+            if (format == Format.JSON) {
+                readJson(reader, handleRow);
+            } else {
+                readCsv(reader, handleRow);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            writeChunk(chunk, chunkLines, written, counts, errors);
+        }
+        long indexStarted = System.nanoTime();
+        written.forEach((shard, ranges) -> shards.on(shard, () -> {
+            ranges.forEach(range -> searchIndex.rebuild(range[0], range[1]));
+            return null;
+        }));
+        if (!written.isEmpty()) {
+            log.debug("Indexed the imported contacts in {} ms",
+                    Duration.ofNanos(System.nanoTime() - indexStarted).toMillis());
+            // Nothing counted again, but cached searches and searching views must see the new index entries.
+            eventPublisher.publishEvent(ContactChangeEvent.bulk(new ContactChangeEvent.CountChanges()));
+        }
+        progress.accept(new ImportProgress(counts.processed, counts.imported, counts.failed));
+
+        Duration duration = Duration.ofNanos(System.nanoTime() - started);
+        log.info("Imported {} contacts ({} failed) in {} ms", counts.imported, counts.failed, duration.toMillis());
+        return new ImportResult(counts.imported, counts.failed, errors, duration);
+    }
+
+    /**
+     * Persists the contacts in one transaction (per shard, written at the same time), together with the new
+     * employee counts of their companies, and records the id range written on each shard.
+     * The contacts of a shard whose transaction fails are counted and reported as failed.
+     */
+    private void writeChunk(List<Contact> contacts, List<Long> lines, Map<Integer, List<long[]>> written,
+                            Counts counts, List<RowError> errors) {
+        Map<Integer, List<Contact>> byShard = contacts.stream()
+                .collect(Collectors.groupingBy(contact -> shards.shardOf(contact.getCompany().getId())));
+        List<RuntimeException> failures = shards.onEach(shard -> {
+            List<Contact> shardContacts = byShard.get(shard);
+            if (shardContacts == null) {
+                return null;
+            }
+            try {
+                write(shardContacts);
+            } catch (RuntimeException e) {
+                return e;
+            }
+            long[] range = {Long.MAX_VALUE, Long.MIN_VALUE};
+            for (Contact contact : shardContacts) {
+                range[0] = Math.min(range[0], contact.getId());
+                range[1] = Math.max(range[1], contact.getId());
+            }
+            written.computeIfAbsent(shard, key -> new CopyOnWriteArrayList<>()).add(range);
+            return null;
+        });
+        for (int shard = 0; shard < failures.size(); shard++) {
+            RuntimeException failure = failures.get(shard);
+            List<Contact> shardContacts = byShard.get(shard);
+            if (failure == null) {
+                if (shardContacts != null) {
+                    counts.imported += shardContacts.size();
+                }
+                continue;
+            }
+            counts.failed += shardContacts.size();
+            log.warn("Could not save {} contacts of lines {} to {}", shardContacts.size(),
+                    lines.get(0), lines.get(lines.size() - 1), failure);
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new RowError(lines.get(0), shardContacts.size() + " contacts of lines " + lines.get(0)
+                        + " to " + lines.get(lines.size() - 1) + " could not be saved: " + failure.getMessage()));
+            }
+        }
+    }
+
+    private void write(List<Contact> contacts) {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Send the whole chunk in a few large JDBC batches.
+            entityManager.unwrap(Session.class).setJdbcBatchSize(CHUNK_SIZE);
+            Map<Long, Integer> newEmployees = new HashMap<>();
+            ContactChangeEvent.CountChanges counts = new ContactChangeEvent.CountChanges();
+            for (Contact contact : contacts) {
+                // Ids come from the pooled sequence optimizer, one sequence call per allocation of ids.
+                entityManager.persist(contact);
+                newEmployees.merge(contact.getCompany().getId(), 1, Integer::sum);
+                counts.created(contact.getCompany().getId(), contact.getStatus().getId());
+            }
+            entityManager.flush();
+            newEmployees.forEach(counterRepository::adjustEmployeeCount);
+            // One event for the whole chunk: views reload once, the dashboard adds the counts of the chunk.
+            eventPublisher.publishEvent(ContactChangeEvent.bulk(counts));
+            entityManager.flush();
+            entityManager.clear();
+        });
+    }
+
+    private void readCsv(Reader reader, Consumer<ImportRow> handleRow) throws IOException {
+        CsvRecordReader csv = new CsvRecordReader(reader);
+        List<String> header = csv.next();
+        if (header == null) {
+            return;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            // A UTF-8 byte order mark would otherwise stick to the first column name.
+            columns.put(header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT), i);
+        }
+        List<String> record;
+        while ((record = csv.next()) != null) {
+            handleRow.accept(new ImportRow(csv.line(),
+                    column(record, columns, "firstname"),
+                    column(record, columns, "lastname"),
+                    column(record, columns, "email"),
+                    column(record, columns, "company"),
+                    column(record, columns, "status")));
+        }
+    }
+
+    private void readJson(Reader reader, Consumer<ImportRow> handleRow) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(reader)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token == JsonToken.START_OBJECT) {
+                long line = parser.currentLocation().getLineNr();
+                // Only the current object is materialized, never the whole document.
+                JsonNode node = parser.readValueAsTree();
+                handleRow.accept(new ImportRow(line, text(node, "firstName"), text(node, "lastName"),
+                        text(node, "email"), text(node, "company"), text(node, "status")));
+                token = parser.nextToken();
+            }
+            if (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                throw new IOException("Expected a contact object on line " + parser.currentLocation().getLineNr());
+            }
+        }
+    }
+
+    private static String column(List<String> record, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index == null || index >= record.size() ? null : record.get(index).trim();
+    }
+
+    private static String text(JsonNode node, String name) {
+        JsonNode value = node.get(name);
+        return value == null || value.isNull() ? null : value.asText().trim();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class Counts {
+        long processed;
+        long imported;
+        long failed;
+    }
+
+    /**
+     * Resolves names to the reference data and validates the resulting contact.
+     */
+    private class Lookup {
+        private final Map<String, Company> companies;
+        private final Map<String, Status> statuses;
+
+        Lookup(ReferenceDataService.Snapshot snapshot) {
+            companies = snapshot.companies().stream()
+                    .collect(Collectors.toMap(company -> key(company.getName()), Function.identity(), (a, b) -> a));
+            statuses = snapshot.statuses().stream()
+                    .collect(Collectors.toMap(status -> key(status.getName()), Function.identity(), (a, b) -> a));
+        }
+
+        /**
+         * Adds the contact of the row to the chunk, or returns why it can't be imported.
+         */
+        String toContact(ImportRow row, List<Contact> chunk) {
+            Company company = row.company() == null ? null : companies.get(key(row.company()));
+            if (company == null) {
+                return "Unknown company: " + row.company();
+            }
+            Status status = row.status() == null ? null : statuses.get(key(row.status()));
+            if (status == null) {
+                return "Unknown status: " + row.status();
+            }
+            Contact contact = new Contact();
+            contact.setFirstName(row.firstName() == null ? "" : row.firstName());
+            contact.setLastName(row.lastName() == null ? "" : row.lastName());
+            contact.setEmail(row.email() == null ? "" : row.email());
+            contact.setCompany(company);
+            contact.setStatus(status);
+            Set<ConstraintViolation<Contact>> violations = validator.validate(contact);
+            if (!violations.isEmpty()) {
+                return violations.stream()
+                        .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", "));
+            }
+            chunk.add(contact);
+            return null;
+        }
+
+        private static String key(String name) {
+            return name.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package tech.hidetora.application.data.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import tech.hidetora.application.data.projection.ContactRow;
+import tech.hidetora.application.data.repository.ContactRepository;
+import tech.hidetora.application.data.shard.ContactShards;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Recent contact search results, so a user typing in the filter doesn't run the same search again
+ * and again, and a longer term doesn't have to go to the database when a shorter one already found little.
+ * <p>
+ * Every term gets its number of matches cached. Terms with at most crm.search.cache.refine-limit matches
+ * also get all their rows cached: pages and sorts of that term are then served from memory,
+ * and a term that extends it ("smith" after "smi") is filtered from those rows instead of queried.
+ * The cache is bounded in rows (crm.search.cache.max-rows) and time (crm.search.cache.ttl),
+ * and is cleared whenever a contact is written.
+ * <p>
+ * Sorted pages are only cut from the cached rows with crm.search.cache.sort-in-memory, when the database sorts
+ * texts like String.compareTo (H2, or the binary collation of the shards). With the language rules of a database
+ * locale, a cached and an uncached term would show the same sort in different orders.
+ */
+@Service
+@Slf4j
+public class ContactSearchCache {
+    /**
+     * The result of a search.
+     *
+     * @param rows all matching rows, best match first, or null when there are more than the refine limit
+     */
+    public record Result(long count, List<ContactRow> rows) {
+    }
+
+    // In-memory sorting for the sort properties of the contact grid.
+    private static final Map<String, Function<ContactRow, String>> SORT_PROPERTIES = Map.of(
+            "firstName", ContactRow::firstName,
+            "lastName", ContactRow::lastName,
+            "email", ContactRow::email,
+            "status.name", ContactRow::statusName,
+            "company.name", ContactRow::companyName);
+
+    private final ContactRepository contactRepository;
+    private final ContactSearchIndex searchIndex;
+    private final int refineLimit;
+    private final boolean sortInMemory;
+    private final Cache<String, Result> results;
+    // Incremented on every write, results loaded across a write are not kept.
+    private final AtomicLong generation = new AtomicLong();
+
+    public ContactSearchCache(ContactRepository contactRepository,
+                              ContactSearchIndex searchIndex,
+                              @Value("${crm.search.cache.refine-limit:500}") int refineLimit,
+                              @Value("${crm.search.cache.max-rows:100000}") long maxRows,
+                              @Value("${crm.search.cache.ttl:PT1M}") Duration ttl,
+                              @Value("${crm.search.cache.sort-in-memory:false}") boolean sortInMemory) {
+        this.contactRepository = contactRepository;
+        this.searchIndex = searchIndex;
+        this.refineLimit = refineLimit;
+        this.sortInMemory = sortInMemory;
+        this.results = Caffeine.newBuilder()
+                .maximumWeight(maxRows)
+                .weigher((String term, Result result) -> 1 + (result.rows() == null ? 0 : result.rows().size()))
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * The cached result of the term, refined from a shorter term or loaded from the database.
+     */
+    public Result search(String term) {
+        String lowerCase = term.toLowerCase(Locale.ROOT);
+        // With sharding every shard caches the results of its own contacts.
+        String shard = ContactShards.currentKey();
+        String key = shard + lowerCase;
+        Result result = results.getIfPresent(key);
+        if (result != null) {
+            return result;
+        }
+        // Loaded outside the cache: a mapping function of the cache would block other terms and the invalidation
+        // for the length of the queries. Two searches of the same new term may both load it.
+        long loadedIn = generation.get();
+        Result refined = refine(shard, lowerCase);
+        result = refined != null ? refined : load(term);
+        results.put(key, result);
+        if (loadedIn != generation.get()) {
+            results.invalidate(key);
+        }
+        return result;
+    }
+
+    /**
+     * A page of a result with all its rows, or null when the sort must be left to the database.
+     */
+    public List<ContactRow> page(Result result, Pageable pageable) {
+        List<ContactRow> rows = result.rows();
+        if (pageable.getSort().isSorted()) {
+            Comparator<ContactRow> comparator = sortInMemory ? comparator(pageable.getSort()) : null;
+            if (comparator == null) {
+                return null;
+            }
+            rows = rows.stream().sorted(comparator).toList();
+        }
+        int from = (int) Math.min(pageable.getOffset(), rows.size());
+        return rows.subList(from, Math.min(from + pageable.getPageSize(), rows.size()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onContactChange(ContactChangeEvent event) {
+        generation.incrementAndGet();
+        results.invalidateAll();
+    }
+
+    private Result load(String term) {
+        boolean indexed = searchIndex.canSearch(term);
+        long count = indexed ? searchIndex.count(term) : contactRepository.countSearch(term);
+        if (count > refineLimit) {
+            return new Result(count, null);
+        }
+        // Few enough to keep them all: in the order the grid shows an unsorted search.
+        List<ContactRow> rows = indexed
+                ? searchIndex.searchRows(term, PageRequest.ofSize(refineLimit))
+                : contactRepository.searchRows(term, PageRequest.of(0, refineLimit, CrmService.KEYSET_SORT));
+        return new Result(rows.size(), rows);
+    }
+
+    /**
+     * Filters the rows of a cached shorter term (the longest cached prefix), or returns null.
+     * Every match of the longer term is a match of the prefix, as long as both are searched the same way:
+     * with the LIKE search, "smith" contains "smi"; with the index, "smith" has all the trigrams of "smi" and more,
+     * and a field containing "smith" contains "smi".
+     */
+    private Result refine(String shard, String key) {
+        if (key.indexOf('%') >= 0 || key.indexOf('_') >= 0) {
+            return null; // LIKE wildcards don't match in memory, neither in the LIKE search nor in the index recheck
+        }
+        boolean indexed = searchIndex.canSearch(key);
+        Set<String> trigrams = ContactSearchIndex.trigrams(key);
+        for (int length = key.length() - 1; length > 0; length--) {
+            String prefix = key.substring(0, length);
+            Result cached = results.getIfPresent(shard + prefix);
+            if (cached == null || cached.rows() == null || searchIndex.canSearch(prefix) != indexed) {
+                continue;
+            }
+            List<ContactRow> rows;
+            if (indexed) {
+                rows = cached.rows().stream()
+                        .filter(row -> ContactSearchIndex.matches(row, key, trigrams))
+                        .sorted(ContactSearchIndex.rankOrder(key))
+                        .collect(Collectors.toList());
+            } else {
+                rows = cached.rows().stream()
+                        .filter(row -> contains(row.firstName(), key) || contains(row.lastName(), key))
+                        .collect(Collectors.toList());
+            }
+            log.debug("Refined search '{}' from the {} cached results of '{}'", key, cached.count(), prefix);
+            return new Result(rows.size(), rows);
+        }
+        return null;
+    }
+
+    private static boolean contains(String value, String key) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(key);
+    }
+
+    private static Comparator<ContactRow> comparator(Sort sort) {
+        Comparator<ContactRow> comparator = null;
+        for (Sort.Order order : sort) {
+            Function<ContactRow, String> property = SORT_PROPERTIES.get(order.getProperty());
+            if (property == null) {
+                return null;
+            }
+            Comparator<ContactRow> next = Comparator.comparing(property, Comparator.nullsFirst(String::compareTo));
+            if (order.isDescending()) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator == null ? null : comparator.thenComparing(ContactRow::id);
+    }
+}
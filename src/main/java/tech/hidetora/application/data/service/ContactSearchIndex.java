@@ -0,0 +1,318 @@
+package tech.hidetora.application.data.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.hidetora.application.data.entity.Company;
+import tech.hidetora.application.data.entity.Contact;
+import tech.hidetora.application.data.entity.ContactTrigram;
+import tech.hidetora.application.data.projection.ContactRow;
+import tech.hidetora.application.data.repository.ContactRepository;
+import tech.hidetora.application.data.repository.ContactTrigramRepository;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Trigram index over the first name, last name, email and company name of every contact.
+ * <p>
+ * Every word of a field is cut into overlapping three character slices ("smith" becomes smi, mit, ith)
+ * which are stored in the CONTACT_TRIGRAM table. A search looks the trigrams of the term up in that table
+ * through its index, instead of running a leading-wildcard LIKE over every contact.
+ * A contact matches when it contains all trigrams of the term, and one of its fields contains the whole term:
+ * the trigrams only find the candidates ("john" has the trigrams of "Johanna Kohn"), and they leave out the
+ * words of the term shorter than three characters.
+ * <p>
+ * Terms without any word of three or more characters can't be looked up, callers fall back to the LIKE search.
+ * The index is kept in sync by CrmService on every save and delete, and is built on startup when it is empty.
+ * Companies can't be renamed from the application, call rebuild() after renaming them in the database.
+ */
+@Service
+@Transactional
+@RequiredArgsConstructor
+@Slf4j
+public class ContactSearchIndex {
+    static final int NAME_WEIGHT = 3;
+    static final int COMPANY_WEIGHT = 2;
+    static final int EMAIL_WEIGHT = 1;
+    private static final int REBUILD_PAGE_SIZE = 500;
+
+    private final ContactTrigramRepository trigramRepository;
+    private final ContactRepository contactRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Set to false to always use the original LIKE search.
+    @Value("${crm.search.index.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Whether the term can be answered from the index.
+     */
+    public boolean canSearch(String term) {
+        return enabled && term != null && !trigrams(term).isEmpty();
+    }
+
+    /**
+     * A page of the contacts matching the term. Without a sort in the pageable,
+     * the best matches come first, otherwise the matches are sorted as requested.
+     */
+    @Transactional(readOnly = true)
+    public List<Contact> search(String term, Pageable pageable) {
+        Set<String> trigrams = trigrams(term);
+        if (pageable.getSort().isSorted()) {
+            return contactRepository.searchIndexed(term, trigrams, trigrams.size(), pageable);
+        }
+        List<Long> ids = rankedIds(term, trigrams, pageable);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return inOrder(ids, contactRepository.findAllWithReferencesByIdIn(ids), Contact::getId);
+    }
+
+    /**
+     * Same as search(), but returns the grid projection.
+     */
+    @Transactional(readOnly = true)
+    public List<ContactRow> searchRows(String term, Pageable pageable) {
+        Set<String> trigrams = trigrams(term);
+        if (pageable.getSort().isSorted()) {
+            return contactRepository.searchIndexedRows(term, trigrams, trigrams.size(), pageable);
+        }
+        List<Long> ids = rankedIds(term, trigrams, pageable);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return inOrder(ids, contactRepository.findRowsByIdIn(ids), ContactRow::id);
+    }
+
+    /**
+     * All contacts matching the term in keyset order, read while the stream is consumed.
+     * Must be consumed inside the caller's transaction.
+     */
+    @Transactional(readOnly = true)
+    public Stream<Contact> stream(String term) {
+        Set<String> trigrams = trigrams(term);
+        return contactRepository.streamIndexed(term, trigrams, trigrams.size());
+    }
+
+    @Transactional(readOnly = true)
+    public long count(String term) {
+        Set<String> trigrams = trigrams(term);
+        return trigramRepository.countMatches(term, trigrams, trigrams.size());
+    }
+
+    /**
+     * (Re)indexes a saved contact. The contact must have an id.
+     */
+    public void index(Contact contact) {
+        trigramRepository.deleteByContactIds(List.of(contact.getId()));
+        addTrigrams(contact);
+    }
+
+    /**
+     * Indexes a contact that was just inserted, skipping the delete of index() since it can't have entries yet.
+     */
+    public void indexNew(Contact contact) {
+        addTrigrams(contact);
+    }
+
+    /**
+     * Replaces the company entries of contacts that were moved to another company by a bulk update.
+     */
+    public void reindexCompany(Collection<Long> contactIds, Company company) {
+        if (contactIds.isEmpty()) {
+            return;
+        }
+        trigramRepository.deleteByContactIdsAndField(contactIds, "C");
+        for (Long contactId : contactIds) {
+            addTrigrams(contactId, "C", company.getName(), COMPANY_WEIGHT);
+        }
+    }
+
+    public void remove(Collection<Long> contactIds) {
+        if (!contactIds.isEmpty()) {
+            trigramRepository.deleteByContactIds(contactIds);
+        }
+    }
+
+    /**
+     * Indexes every contact again, one page (and one transaction) at a time.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void rebuild() {
+        long started = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(status ->
+                entityManager.createQuery("delete from ContactTrigram").executeUpdate());
+        ContactCursor cursor = null;
+        long indexed = 0;
+        while (true) {
+            ContactCursor after = cursor;
+            List<Contact> page = transactionTemplate.execute(status -> {
+                List<Contact> contacts = after == null
+                        ? contactRepository.findPage(PageRequest.of(0, REBUILD_PAGE_SIZE, CrmService.KEYSET_SORT))
+                        : contactRepository.findPageAfter(after.lastName(), after.firstName(), after.id(),
+                        PageRequest.ofSize(REBUILD_PAGE_SIZE));
+                contacts.forEach(this::addTrigrams);
+                // Writes the batch and keeps the persistence context small.
+                entityManager.flush();
+                entityManager.clear();
+                return contacts;
+            });
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            indexed += page.size();
+            cursor = ContactCursor.of(page.get(page.size() - 1));
+        }
+        log.info("Indexed {} contacts for search in {} ms", indexed, System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Indexes the contacts with ids from firstId to lastId again, one page (and one transaction) at a time.
+     * For contacts inserted in bulk without their index entries, see ContactImportService.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long rebuild(long firstId, long lastId) {
+        long indexed = 0;
+        long afterId = firstId - 1;
+        while (true) {
+            long after = afterId;
+            List<Contact> page = transactionTemplate.execute(status -> {
+                List<Contact> contacts = contactRepository.findPageInIdRange(after, lastId,
+                        PageRequest.ofSize(REBUILD_PAGE_SIZE));
+                // Contacts of the range saved by somebody else in the meantime are indexed already.
+                remove(contacts.stream().map(Contact::getId).toList());
+                contacts.forEach(this::addTrigrams);
+                entityManager.flush();
+                entityManager.clear();
+                return contacts;
+            });
+            if (page == null || page.isEmpty()) {
+                return indexed;
+            }
+            indexed += page.size();
+            afterId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void buildOnStartup() {
+        // data.sql (or any other tool) inserts contacts behind the back of the index.
+        if (enabled && trigramRepository.count() == 0 && contactRepository.count() > 0) {
+            rebuild();
+        }
+    }
+
+    private void addTrigrams(Contact contact) {
+        // Persist (and not save, which would merge) so the rows are sent in JDBC batches.
+        addTrigrams(contact.getId(), "F", contact.getFirstName(), NAME_WEIGHT);
+        addTrigrams(contact.getId(), "L", contact.getLastName(), NAME_WEIGHT);
+        addTrigrams(contact.getId(), "E", contact.getEmail(), EMAIL_WEIGHT);
+        if (contact.getCompany() != null) {
+            addTrigrams(contact.getId(), "C", contact.getCompany().getName(), COMPANY_WEIGHT);
+        }
+    }
+
+    private void addTrigrams(Long contactId, String field, String value, int weight) {
+        for (String trigram : trigrams(value)) {
+            entityManager.persist(new ContactTrigram(contactId, field, trigram, weight));
+        }
+    }
+
+    /**
+     * The distinct lower case trigrams of every word of the text.
+     * Words shorter than three characters have no trigrams.
+     */
+    static Set<String> trigrams(String text) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        if (text == null) {
+            return trigrams;
+        }
+        for (String word : text.toLowerCase(Locale.ROOT).split("\\s+")) {
+            for (int i = 0; i + 3 <= word.length(); i++) {
+                trigrams.add(word.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+
+    /**
+     * Whether the row matches the term, the in-memory equivalent of the index lookup and its recheck.
+     * The term must not contain LIKE wildcards.
+     */
+    static boolean matches(ContactRow row, String term, Set<String> trigrams) {
+        Set<String> contained = new LinkedHashSet<>();
+        contained.addAll(trigrams(row.firstName()));
+        contained.addAll(trigrams(row.lastName()));
+        contained.addAll(trigrams(row.email()));
+        contained.addAll(trigrams(row.companyName()));
+        if (!contained.containsAll(trigrams)) {
+            return false;
+        }
+        String lowerCase = term.toLowerCase(Locale.ROOT);
+        return Stream.of(row.firstName(), row.lastName(), row.email(), row.companyName())
+                .anyMatch(value -> value != null && value.toLowerCase(Locale.ROOT).contains(lowerCase));
+    }
+
+    /**
+     * The rank of a matching row, the in-memory equivalent of the sum(weight) of searchRanked().
+     */
+    static int score(ContactRow row, Set<String> trigrams) {
+        return NAME_WEIGHT * common(row.firstName(), trigrams)
+                + NAME_WEIGHT * common(row.lastName(), trigrams)
+                + EMAIL_WEIGHT * common(row.email(), trigrams)
+                + COMPANY_WEIGHT * common(row.companyName(), trigrams);
+    }
+
+    /**
+     * The order of unsorted searches of the term, best match first, for results combined in memory.
+     */
+    public static Comparator<ContactRow> rankOrder(String term) {
+        Set<String> trigrams = trigrams(term);
+        return Comparator.comparingInt((ContactRow row) -> score(row, trigrams))
+                .reversed()
+                .thenComparing(ContactRow::id);
+    }
+
+    private static int common(String value, Set<String> trigrams) {
+        Set<String> valueTrigrams = trigrams(value);
+        valueTrigrams.retainAll(trigrams);
+        return valueTrigrams.size();
+    }
+
+    private List<Long> rankedIds(String term, Set<String> trigrams, Pageable pageable) {
+        return trigramRepository.searchRanked(term, trigrams, trigrams.size(),
+                PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+    }
+
+    // Loading by id loses the ranking, put the results back in the order of the ids.
+    private static <T> List<T> inOrder(List<Long> ids, List<T> items, Function<T, Long> idOf) {
+        Map<Long, T> byId = items.stream().collect(Collectors.toMap(idOf, Function.identity()));
+        return ids.stream().map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+}
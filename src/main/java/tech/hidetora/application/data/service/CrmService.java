@@ -3,15 +3,30 @@ package tech.hidetora.application.data.service;
 import tech.hidetora.application.data.entity.Company;
 import tech.hidetora.application.data.entity.Contact;
 import tech.hidetora.application.data.entity.Status;
+import tech.hidetora.application.data.projection.ContactReferences;
+import tech.hidetora.application.data.projection.ContactRow;
+import tech.hidetora.application.data.projection.IdCount;
+import tech.hidetora.application.data.repository.CompanyCounterRepository;
 import tech.hidetora.application.data.repository.CompanyRepository;
 import tech.hidetora.application.data.repository.ContactRepository;
 import tech.hidetora.application.data.repository.StatusRepository;
+import tech.hidetora.application.data.shard.ShardRouting;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * @author Hidetora
@@ -20,50 +35,407 @@ import java.util.List;
  */
 
 @Service // The @Service annotation makes this a Spring-managed service that you can inject into your view.
+// Methods that only read are marked read-only: Hibernate skips dirty checking and, with the replicas profile,
+// they run on a replica (see ReplicaRoutingDataSource). Reads that must see the latest commit stay read-write.
 @Transactional
 @RequiredArgsConstructor // Use Spring constructor injection to autowire the database repositories.
 @Slf4j
 public class CrmService {
+    /**
+     * The keyset order. Pages fetched with this sort can be continued with findContactsAfter().
+     */
+    public static final Sort KEYSET_SORT = Sort.by("lastName", "firstName", "id");
+    // Bulk operations bind at most this many ids per statement, databases limit the size of IN lists.
+    private static final int BULK_CHUNK_SIZE = 1000;
+
     private final ContactRepository contactRepository;
     private final CompanyRepository companyRepository;
+    private final CompanyCounterRepository counterRepository;
     private final StatusRepository statusRepository;
+    private final ContactSearchIndex searchIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ContactBatchWriter batchWriter;
+    private final ContactSearchCache searchCache;
 
+    @ShardRouting(ShardRouting.Strategy.ALL_CONCAT)
+    @Transactional(readOnly = true)
     public List<Contact> findAllContacts(String stringFilter) {
         // Check if there’s an active filter: return either all contacts,
         // or use the repository to filter based on the string.
         if (stringFilter == null || stringFilter.isEmpty()) {
-            log.info("Fetching all contacts");
+            log.debug("Fetching all contacts");
             return contactRepository.findAll();
         } else {
-            log.info("Performing a search for: " + stringFilter);
+            log.debug("Performing a search for: {}", stringFilter);
             return contactRepository.search(stringFilter);
         }
     }
 
+    /**
+     * Fetches only the requested window of contacts, sorted on the database side.
+     * Used by the lazy data provider of the contact grid.
+     * Filters are answered by the search index (best matches first when the pageable is unsorted),
+     * terms the index can't answer use the LIKE search.
+     */
+    @ShardRouting(ShardRouting.Strategy.PAGE)
+    @Transactional(readOnly = true)
+    public List<Contact> findAllContacts(String stringFilter, Pageable pageable) {
+        if (stringFilter == null || stringFilter.isEmpty()) {
+            return contactRepository.findPage(pageable);
+        } else if (searchIndex.canSearch(stringFilter)) {
+            return searchIndex.search(stringFilter, pageable);
+        } else {
+            return contactRepository.search(stringFilter, pageable);
+        }
+    }
+
+    @ShardRouting(ShardRouting.Strategy.SORTED)
+    @Transactional(readOnly = true)
+    public List<Contact> findAllContacts(String stringFilter, Sort sort) {
+        if (stringFilter == null || stringFilter.isEmpty()) {
+            return contactRepository.findAll(sort);
+        } else {
+            return contactRepository.search(stringFilter, sort);
+        }
+    }
+
+    /**
+     * Keyset pagination: returns up to limit contacts that come after the cursor in KEYSET_SORT order.
+     * A null cursor returns the first page. Each page costs the same no matter how deep the caller is,
+     * so the grid and exports can stream forward through any number of contacts.
+     */
+    @ShardRouting(ShardRouting.Strategy.KEYSET)
+    @Transactional(readOnly = true)
+    public List<Contact> findContactsAfter(String stringFilter, ContactCursor cursor, int limit) {
+        boolean filtered = stringFilter != null && !stringFilter.isEmpty();
+        if (cursor == null) {
+            PageRequest firstPage = PageRequest.of(0, limit, KEYSET_SORT);
+            return filtered ? contactRepository.search(stringFilter, firstPage) : contactRepository.findPage(firstPage);
+        }
+        PageRequest nextPage = PageRequest.ofSize(limit);
+        if (filtered) {
+            return contactRepository.searchPageAfter(stringFilter,
+                    cursor.lastName(), cursor.firstName(), cursor.id(), nextPage);
+        }
+        return contactRepository.findPageAfter(cursor.lastName(), cursor.firstName(), cursor.id(), nextPage);
+    }
+
+    /**
+     * The grid variant of findAllContacts(String, Pageable): every row is a ContactRow
+     * loaded together with its status and company name in a single statement.
+     */
+    @ShardRouting(ShardRouting.Strategy.PAGE)
+    @Transactional(readOnly = true)
+    public List<ContactRow> findContactRows(String stringFilter, Pageable pageable) {
+        if (stringFilter == null || stringFilter.isEmpty()) {
+            return contactRepository.findRows(pageable);
+        }
+        // Small results are kept in memory, their pages don't need a query.
+        ContactSearchCache.Result cached = searchCache.search(stringFilter);
+        List<ContactRow> page = cached.rows() == null ? null : searchCache.page(cached, pageable);
+        if (page != null) {
+            return page;
+        } else if (searchIndex.canSearch(stringFilter)) {
+            return searchIndex.searchRows(stringFilter, pageable);
+        } else {
+            return contactRepository.searchRows(stringFilter, pageable);
+        }
+    }
+
+    /**
+     * The grid variant of findContactsAfter() for unfiltered keyset pagination.
+     */
+    @ShardRouting(ShardRouting.Strategy.KEYSET)
+    @Transactional(readOnly = true)
+    public List<ContactRow> findContactRowsAfter(ContactCursor cursor, int limit) {
+        if (cursor == null) {
+            return contactRepository.findRows(PageRequest.of(0, limit, KEYSET_SORT));
+        }
+        return contactRepository.findRowsAfter(cursor.lastName(), cursor.firstName(), cursor.id(),
+                PageRequest.ofSize(limit));
+    }
+
+    /**
+     * The grid rows of the given contacts, in no particular order. Deleted contacts are skipped.
+     * Read from the primary: it is called right after the contacts were changed, a replica may not have the change yet.
+     */
+    @ShardRouting(ShardRouting.Strategy.ALL_CONCAT)
+    public List<ContactRow> findContactRows(Collection<Long> ids) {
+        return ids.isEmpty() ? List.of() : contactRepository.findRowsByIdIn(ids);
+    }
+
+    /**
+     * Every contact matching the filter, in keyset order, fetched from the database while the stream is consumed.
+     * The stream holds an open result set: consume and close it inside a (read-only) transaction of the caller.
+     */
+    @ShardRouting(ShardRouting.Strategy.STREAM)
+    @Transactional(readOnly = true)
+    public Stream<Contact> streamContacts(String stringFilter) {
+        if (stringFilter == null || stringFilter.isEmpty()) {
+            return contactRepository.streamAll();
+        } else if (searchIndex.canSearch(stringFilter)) {
+            return searchIndex.stream(stringFilter);
+        } else {
+            return contactRepository.streamSearch(stringFilter);
+        }
+    }
+
+    /**
+     * Loads a contact for editing, together with its company and status.
+     * Read from the primary, so the contact is saved against its latest version.
+     */
+    @ShardRouting(ShardRouting.Strategy.ALL_FIRST_PRESENT)
+    public Optional<Contact> findContact(Long id) {
+        return contactRepository.findById(id);
+    }
+
+    @ShardRouting(ShardRouting.Strategy.ALL_SUM)
+    @Transactional(readOnly = true)
     public long countContacts() {
         return contactRepository.count();
     }
 
+    @ShardRouting(ShardRouting.Strategy.ALL_SUM)
+    @Transactional(readOnly = true)
+    public long countContacts(String stringFilter) {
+        if (stringFilter == null || stringFilter.isEmpty()) {
+            return contactRepository.count();
+        }
+        // Searches are counted once, repeated and refined terms come from the cache.
+        return searchCache.search(stringFilter).count();
+    }
+
+    /**
+     * The number of contacts of every company, for the dashboard.
+     */
+    @ShardRouting(ShardRouting.Strategy.ALL_SUM_BY_ID)
+    @Transactional(readOnly = true)
+    public List<IdCount> countContactsByCompany() {
+        return contactRepository.countByCompany();
+    }
+
+    @ShardRouting(ShardRouting.Strategy.ALL_SUM_BY_ID)
+    @Transactional(readOnly = true)
+    public List<IdCount> countContactsByStatus() {
+        return contactRepository.countByStatus();
+    }
+
+    @ShardRouting(ShardRouting.Strategy.CONTACT_OWNER)
     public void deleteContact(Contact contact) {
+        if (contact == null || contact.getId() == null) {
+            return; // Never saved, nothing to delete.
+        }
+        ContactReferences previous = contactRepository.findReferences(contact.getId());
+        searchIndex.remove(List.of(contact.getId()));
         contactRepository.delete(contact);
+        if (previous != null) {
+            if (previous.companyId() != null) {
+                counterRepository.adjustEmployeeCount(previous.companyId(), -1);
+            }
+            eventPublisher.publishEvent(new ContactChangeEvent(ContactChangeEvent.Type.DELETED, contact.getId(),
+                    previous.companyId(), previous.statusId(), null, null));
+        }
     }
 
-    public void saveContact(Contact contact) {
+    /**
+     * Saves a new or changed contact.
+     *
+     * @return the saved contact, its version is incremented when the transaction commits
+     */
+    @ShardRouting(ShardRouting.Strategy.SAVE)
+    public Contact saveContact(Contact contact) {
         // Service classes often include validation and other business rules before persisting data.
         // You check here that you aren’t trying to save a null object.
         if (contact == null) {
             log.error("Contact is null. Are you sure you have connected your form to the application?");
-            System.err.println("Contact is null. Are you sure you have connected your form to the application?");
-            return;
+            return null;
+        }
+        // Read the company and status before saving, so a contact moving between companies updates both counters.
+        ContactReferences previous = contact.getId() == null ? null : contactRepository.findReferences(contact.getId());
+        Long previousCompanyId = previous == null ? null : previous.companyId();
+        Contact saved = contactRepository.save(contact);
+        searchIndex.index(saved);
+        Long companyId = saved.getCompany() == null ? null : saved.getCompany().getId();
+        Long statusId = saved.getStatus() == null ? null : saved.getStatus().getId();
+        if (!Objects.equals(previousCompanyId, companyId)) {
+            if (previousCompanyId != null) {
+                counterRepository.adjustEmployeeCount(previousCompanyId, -1);
+            }
+            if (companyId != null) {
+                counterRepository.adjustEmployeeCount(companyId, 1);
+            }
+        }
+        // Listeners are notified once the transaction commits.
+        eventPublisher.publishEvent(previous == null
+                ? new ContactChangeEvent(ContactChangeEvent.Type.CREATED, saved.getId(), null, null, companyId, statusId)
+                : new ContactChangeEvent(ContactChangeEvent.Type.UPDATED, saved.getId(),
+                previous.companyId(), previous.statusId(), companyId, statusId));
+        return saved;
+    }
+
+    /**
+     * Inserts the contact keeping its id, on the shard of its company: the first half of moving a contact to
+     * a company of another shard, see ContactShardingAspect. Every shard hands out ids from a range of its own,
+     * so the id is free on the new shard. The version is incremented, like by an update.
+     */
+    @ShardRouting(ShardRouting.Strategy.COMPANY_SHARD)
+    public Contact insertMovedContact(Contact contact) {
+        contactRepository.insertWithId(contact.getId(), contact.getVersion() + 1, contact.getFirstName(),
+                contact.getLastName(), contact.getEmail(), contact.getCompany(), contact.getStatus());
+        Contact saved = contactRepository.findById(contact.getId()).orElseThrow();
+        searchIndex.indexNew(saved);
+        Long companyId = saved.getCompany().getId();
+        Long statusId = saved.getStatus() == null ? null : saved.getStatus().getId();
+        counterRepository.adjustEmployeeCount(companyId, 1);
+        eventPublisher.publishEvent(
+                new ContactChangeEvent(ContactChangeEvent.Type.CREATED, saved.getId(), null, null, companyId, statusId));
+        return saved;
+    }
+
+    /**
+     * Saves many new or changed contacts with batched inserts and updates.
+     * Contacts changed or deleted by somebody else since they were read are reported as conflicts
+     * and not saved, the rest of the batch is saved anyway.
+     */
+    @ShardRouting(ShardRouting.Strategy.SAVE_ALL)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // Every chunk of the batch commits on its own.
+    public ContactBatchWriter.BatchSaveResult saveContacts(Collection<Contact> contacts) {
+        return saveContacts(contacts, ContactBatchWriter.ConflictPolicy.REPORT);
+    }
+
+    @ShardRouting(ShardRouting.Strategy.SAVE_ALL)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ContactBatchWriter.BatchSaveResult saveContacts(Collection<Contact> contacts,
+                                                           ContactBatchWriter.ConflictPolicy policy) {
+        return batchWriter.saveContacts(contacts, policy);
+    }
+
+    /**
+     * Sets the status of all the given contacts with set-based updates, without loading them.
+     *
+     * @return the number of contacts that changed
+     */
+    @ShardRouting(ShardRouting.Strategy.ALL_SUM)
+    public int updateStatus(Collection<Long> contactIds, Status status) {
+        int updated = 0;
+        ContactChangeEvent.CountChanges counts = new ContactChangeEvent.CountChanges();
+        for (List<Long> chunk : chunks(contactIds)) {
+            // Counted before the update: contacts that already have the status are not changed.
+            List<IdCount> previous = contactRepository.countByStatusForIds(chunk);
+            int changed = contactRepository.updateStatus(chunk, status);
+            if (changed == 0) {
+                continue;
+            }
+            previous.stream()
+                    .filter(count -> !status.getId().equals(count.id()))
+                    .forEach(count -> counts.status(count.id(), -count.count()));
+            counts.status(status.getId(), changed);
+            updated += changed;
         }
-        contactRepository.save(contact);
+        publishBulkChange(counts);
+        return updated;
     }
 
+    /**
+     * Moves all the given contacts to the company with set-based updates, keeping the employee counters
+     * and the search index in sync.
+     *
+     * @return the number of contacts that changed
+     */
+    @ShardRouting(ShardRouting.Strategy.REASSIGN)
+    public int reassignCompany(Collection<Long> contactIds, Company company) {
+        int updated = 0;
+        ContactChangeEvent.CountChanges counts = new ContactChangeEvent.CountChanges();
+        for (List<Long> chunk : chunks(contactIds)) {
+            // Counted before the update: contacts already at the company are not moved and keep their counter.
+            List<IdCount> previous = contactRepository.countByCompanyForIds(chunk);
+            int moved = contactRepository.updateCompany(chunk, company);
+            if (moved == 0) {
+                continue;
+            }
+            previous.stream()
+                    .filter(count -> count.id() != null && !count.id().equals(company.getId()))
+                    .forEach(count -> {
+                        counterRepository.adjustEmployeeCount(count.id(), -count.count().intValue());
+                        counts.company(count.id(), -count.count());
+                    });
+            counterRepository.adjustEmployeeCount(company.getId(), moved);
+            counts.company(company.getId(), moved);
+            searchIndex.reindexCompany(chunk, company);
+            updated += moved;
+        }
+        publishBulkChange(counts);
+        return updated;
+    }
+
+    /**
+     * Deletes all the given contacts with set-based deletes.
+     *
+     * @return the number of contacts deleted
+     */
+    @ShardRouting(ShardRouting.Strategy.ALL_SUM)
+    public int deleteContacts(Collection<Long> contactIds) {
+        int deleted = 0;
+        ContactChangeEvent.CountChanges counts = new ContactChangeEvent.CountChanges();
+        for (List<Long> chunk : chunks(contactIds)) {
+            List<IdCount> previous = contactRepository.countByCompanyForIds(chunk);
+            List<IdCount> previousStatuses = contactRepository.countByStatusForIds(chunk);
+            searchIndex.remove(chunk);
+            int chunkDeleted = contactRepository.deleteByIdIn(chunk);
+            deleted += chunkDeleted;
+            counts.deleted(chunkDeleted);
+            previous.stream()
+                    .filter(count -> count.id() != null)
+                    .forEach(count -> {
+                        counterRepository.adjustEmployeeCount(count.id(), -count.count().intValue());
+                        counts.company(count.id(), -count.count());
+                    });
+            previousStatuses.forEach(count -> counts.status(count.id(), -count.count()));
+        }
+        publishBulkChange(counts);
+        return deleted;
+    }
+
+    @ShardRouting(ShardRouting.Strategy.HOME)
+    @Transactional(readOnly = true)
     public List<Company> findAllCompanies() {
         return companyRepository.findAll();
     }
 
+    @ShardRouting(ShardRouting.Strategy.HOME)
+    @Transactional(readOnly = true)
     public List<Status> findAllStatuses(){
         return statusRepository.findAll();
     }
+
+    /**
+     * Companies and statuses by id come from the second-level cache, see ReferenceDataCacheConfig.
+     */
+    @ShardRouting(ShardRouting.Strategy.HOME)
+    @Transactional(readOnly = true)
+    public Optional<Company> findCompany(Long id) {
+        return companyRepository.findById(id);
+    }
+
+    @ShardRouting(ShardRouting.Strategy.HOME)
+    @Transactional(readOnly = true)
+    public Optional<Status> findStatus(Long id) {
+        return statusRepository.findById(id);
+    }
+
+    private void publishBulkChange(ContactChangeEvent.CountChanges counts) {
+        if (!counts.isEmpty()) {
+            // One event for the whole operation, with the count changes of all its contacts.
+            eventPublisher.publishEvent(ContactChangeEvent.bulk(counts));
+        }
+    }
+
+    private static List<List<Long>> chunks(Collection<Long> ids) {
+        List<Long> all = List.copyOf(ids);
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += BULK_CHUNK_SIZE) {
+            chunks.add(all.subList(from, Math.min(from + BULK_CHUNK_SIZE, all.size())));
+        }
+        return chunks;
+    }
 }
@@ -0,0 +1,230 @@
+package tech.hidetora.application.data.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tech.hidetora.application.data.entity.Company;
+import tech.hidetora.application.data.entity.Status;
+import tech.hidetora.application.data.projection.IdCount;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Contact totals for the dashboard, kept in memory.
+ * <p>
+ * The counts are loaded once with two group by queries and then updated incrementally from the
+ * ContactChangeEvents published by CrmService, so reading them never touches the database and costs
+ * the same no matter how many contacts there are. They are reloaded periodically to correct drift
+ * caused by writes that bypass CrmService (or by another instance of the application).
+ * Bulk operations publish the count changes of all their contacts at once, which are applied the same way.
+ * <p>
+ * A change is applied once its transaction committed, in a short critical section of the committing thread.
+ * Reloads query the database without holding that lock. A change whose transaction was still running while a
+ * reload queried may or may not be in the reloaded counts, so a reload that overlapped a change is thrown away and
+ * repeated. When writes never pause long enough, the counts kept up to date by the changes are kept until the next
+ * reload, so no change is counted twice or lost. Only the first load is taken as is after its last attempt.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DashboardStatsService {
+    public static final String OTHER = "Other";
+    private static final int RESYNC_ATTEMPTS = 3;
+
+    // Not the repository: with sharding, CrmService adds up the counts of all shards.
+    private final CrmService crmService;
+    private final ReferenceDataService referenceData;
+
+    private final AtomicLong total = new AtomicLong();
+    private volatile Map<Long, AtomicLong> byCompany = new ConcurrentHashMap<>();
+    private volatile Map<Long, AtomicLong> byStatus = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    // Guarded by this: changes published in a transaction that hasn't completed yet, and all changes published.
+    private int pendingChanges;
+    private long publishedChanges;
+    // Only one reload at a time, without blocking the changes.
+    private final Object resyncLock = new Object();
+
+    // Set to false to load the counts with the first dashboard instead, which shortens the startup.
+    @Value("${crm.dashboard.load-on-startup:true}")
+    private boolean loadOnStartup;
+
+    /**
+     * A slice of a chart: a company or status name and its number of contacts.
+     */
+    public record NamedCount(String name, long count) {
+    }
+
+    public long totalContacts() {
+        ensureLoaded();
+        return total.get();
+    }
+
+    /**
+     * Contacts per company, largest first. With topN > 0 only the topN largest companies are returned
+     * and the remaining ones are summed up in a single "Other" entry.
+     */
+    public List<NamedCount> contactsByCompany(int topN) {
+        ensureLoaded();
+        Map<Long, String> names = referenceData.current().companies().stream()
+                .collect(Collectors.toMap(Company::getId, Company::getName));
+        return named(byCompany, names, topN);
+    }
+
+    public List<NamedCount> contactsByStatus() {
+        ensureLoaded();
+        Map<Long, String> names = referenceData.current().statuses().stream()
+                .collect(Collectors.toMap(Status::getId, Status::getName));
+        return named(byStatus, names, 0);
+    }
+
+    /**
+     * Applies the change once its transaction committed, drops it when the transaction rolled back.
+     */
+    @EventListener
+    public void onContactChange(ContactChangeEvent event) {
+        synchronized (this) {
+            pendingChanges++;
+            publishedChanges++;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    complete(event, status == STATUS_COMMITTED);
+                }
+            });
+        } else {
+            complete(event, true);
+        }
+    }
+
+    private synchronized void complete(ContactChangeEvent event, boolean committed) {
+        pendingChanges--;
+        // Before the first load there is nothing to apply it to, the load reads the committed state.
+        if (committed && loaded) {
+            apply(event);
+        }
+    }
+
+    private void apply(ContactChangeEvent event) {
+        if (event.type() == ContactChangeEvent.Type.BULK) {
+            ContactChangeEvent.CountChanges counts = event.counts();
+            total.addAndGet(counts.total());
+            counts.byCompany().forEach((id, delta) -> add(byCompany, id, delta));
+            counts.byStatus().forEach((id, delta) -> add(byStatus, id, delta));
+            return;
+        }
+        switch (event.type()) {
+            case CREATED -> total.incrementAndGet();
+            case DELETED -> total.decrementAndGet();
+            default -> {
+            }
+        }
+        move(byCompany, event.previousCompanyId(), event.companyId());
+        move(byStatus, event.previousStatusId(), event.statusId());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (loadOnStartup) {
+            resync();
+        }
+    }
+
+    /**
+     * Reloads all counts from the database, unless contacts kept changing while it queried (see the class comment).
+     */
+    @Scheduled(fixedDelayString = "${crm.dashboard.resync-interval:PT15M}",
+            initialDelayString = "${crm.dashboard.resync-interval:PT15M}")
+    public void resync() {
+        synchronized (resyncLock) {
+            for (int attempt = 1; ; attempt++) {
+                boolean quiet;
+                long published;
+                synchronized (this) {
+                    quiet = pendingChanges == 0;
+                    published = publishedChanges;
+                }
+                long contacts = crmService.countContacts();
+                Map<Long, AtomicLong> companies = toCounters(crmService.countContactsByCompany());
+                Map<Long, AtomicLong> statuses = toCounters(crmService.countContactsByStatus());
+                synchronized (this) {
+                    quiet &= publishedChanges == published;
+                    if (quiet || (attempt == RESYNC_ATTEMPTS && !loaded)) {
+                        total.set(contacts);
+                        byCompany = companies;
+                        byStatus = statuses;
+                        loaded = true;
+                        log.debug("Loaded dashboard statistics: {} contacts", contacts);
+                        return;
+                    }
+                    if (attempt == RESYNC_ATTEMPTS) {
+                        log.debug("Contacts changed during every reload, keeping the dashboard statistics");
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (resyncLock) {
+                // Another dashboard may have loaded the counts while this one waited.
+                if (!loaded) {
+                    resync();
+                }
+            }
+        }
+    }
+
+    private static void move(Map<Long, AtomicLong> counters, Long from, Long to) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        add(counters, from, -1);
+        add(counters, to, 1);
+    }
+
+    private static void add(Map<Long, AtomicLong> counters, Long id, long delta) {
+        if (id != null) {
+            counters.computeIfAbsent(id, key -> new AtomicLong()).addAndGet(delta);
+        }
+    }
+
+    private static Map<Long, AtomicLong> toCounters(List<IdCount> counts) {
+        return counts.stream()
+                .filter(count -> count.id() != null)
+                .collect(Collectors.toConcurrentMap(IdCount::id, count -> new AtomicLong(count.count())));
+    }
+
+    private static List<NamedCount> named(Map<Long, AtomicLong> counters, Map<Long, String> names, int topN) {
+        List<NamedCount> counts = counters.entrySet().stream()
+                .filter(entry -> entry.getValue().get() > 0)
+                .map(entry -> new NamedCount(names.getOrDefault(entry.getKey(), "#" + entry.getKey()),
+                        entry.getValue().get()))
+                .sorted(Comparator.comparingLong(NamedCount::count).reversed())
+                .collect(Collectors.toCollection(ArrayList::new));
+        if (topN <= 0 || counts.size() <= topN) {
+            return counts;
+        }
+        long other = counts.subList(topN, counts.size()).stream().mapToLong(NamedCount::count).sum();
+        List<NamedCount> top = new ArrayList<>(counts.subList(0, topN));
+        top.add(new NamedCount(OTHER, other));
+        return top;
+    }
+}
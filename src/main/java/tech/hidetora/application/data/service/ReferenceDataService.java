@@ -0,0 +1,80 @@
+package tech.hidetora.application.data.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tech.hidetora.application.data.entity.Company;
+import tech.hidetora.application.data.entity.Status;
+import tech.hidetora.application.data.repository.CompanyRepository;
+import tech.hidetora.application.data.repository.StatusRepository;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Application wide, read-only copy of the companies and statuses.
+ * <p>
+ * All UIs share the same immutable Snapshot instead of every form holding its own lists.
+ * A new snapshot (with a higher version) replaces the current one on every refresh().
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReferenceDataService {
+    private final CompanyRepository companyRepository;
+    private final StatusRepository statusRepository;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * The reference data at one point in time. Companies are sorted by name.
+     */
+    public record Snapshot(long version, List<Company> companies, List<Status> statuses) {
+
+        /**
+         * A window of the companies whose name contains the filter, ignoring case.
+         */
+        public Stream<Company> findCompanies(String filter, int offset, int limit) {
+            return companies.stream()
+                    .filter(company -> matches(company, filter))
+                    .skip(offset)
+                    .limit(limit);
+        }
+
+        public int countCompanies(String filter) {
+            return (int) companies.stream().filter(company -> matches(company, filter)).count();
+        }
+
+        private static boolean matches(Company company, String filter) {
+            return filter == null || filter.isEmpty()
+                    || company.getName().toLowerCase(Locale.ROOT).contains(filter.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    public Snapshot current() {
+        Snapshot current = snapshot.get();
+        return current != null ? current : refresh();
+    }
+
+    /**
+     * Reloads the reference data. Runs periodically, call it directly after changing companies or statuses.
+     */
+    @Scheduled(fixedDelayString = "${crm.reference-data.refresh-interval:PT5M}",
+            initialDelayString = "${crm.reference-data.refresh-interval:PT5M}")
+    public Snapshot refresh() {
+        List<Company> companies = companyRepository.findAll().stream()
+                .sorted(Comparator.comparing(Company::getName, String.CASE_INSENSITIVE_ORDER))
+                .toList();
+        Snapshot next = new Snapshot(versions.incrementAndGet(), companies, List.copyOf(statusRepository.findAll()));
+        snapshot.set(next);
+        log.debug("Loaded reference data version {}: {} companies, {} statuses",
+                next.version(), companies.size(), next.statuses().size());
+        return next;
+    }
+}
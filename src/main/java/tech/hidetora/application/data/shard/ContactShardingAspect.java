@@ -0,0 +1,430 @@
+package tech.hidetora.application.data.shard;
+
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import tech.hidetora.application.data.entity.Company;
+import tech.hidetora.application.data.entity.Contact;
+import tech.hidetora.application.data.projection.ContactReferences;
+import tech.hidetora.application.data.projection.ContactRow;
+import tech.hidetora.application.data.projection.IdCount;
+import tech.hidetora.application.data.repository.ContactRepository;
+import tech.hidetora.application.data.service.ContactBatchWriter;
+import tech.hidetora.application.data.service.ContactCursor;
+import tech.hidetora.application.data.service.ContactSearchIndex;
+import tech.hidetora.application.data.service.CrmService;
+
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Spreads the calls to CrmService over the shards, see ContactShards.
+ * <p>
+ * Calls about one contact or company run on its shard. Searches and counts run on all shards at the same time
+ * and their results are combined: lists are merged in the requested order, pages are cut from the merged
+ * results (every shard returns its first offset + size matches, so deep pages get expensive), counts are added
+ * up. Companies and statuses are reference data with a copy on every shard (see ShardRoutingDataSource),
+ * they are read from the home shard. Every method of CrmService declares which of these it is with ShardRouting,
+ * the aspect fails on startup when one doesn't.
+ * <p>
+ * A contact moved to a company of another shard is inserted there with the same id, and deleted from the old one.
+ * Calls made while a shard is bound, by the work this aspect runs, go straight to CrmService.
+ * It runs outside the transactions of CrmService, so every shard gets transactions of its own,
+ * and inside DataLayerMetrics, which times the whole call.
+ */
+@Aspect
+@Component
+@Profile("shards")
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@Slf4j
+public class ContactShardingAspect {
+    // The page size of streams and the number of ids bound per statement when looking for contacts.
+    private static final int CHUNK_SIZE = 1000;
+    private static final Comparator<ContactRow> KEYSET_ORDER = order(CrmService.KEYSET_SORT);
+
+    private final ContactShards shards;
+    private final ContactRepository contactRepository;
+    private final ContactSearchIndex searchIndex;
+    // The proxy, for the calls that must go through this aspect again.
+    private final CrmService crmService;
+
+    public ContactShardingAspect(ContactShards shards,
+                                 ContactRepository contactRepository,
+                                 ContactSearchIndex searchIndex,
+                                 @Lazy CrmService crmService) {
+        this.shards = shards;
+        this.contactRepository = contactRepository;
+        this.searchIndex = searchIndex;
+        this.crmService = crmService;
+        List<String> unrouted = unrouted();
+        if (!unrouted.isEmpty()) {
+            throw new IllegalStateException("CrmService." + String.join(", CrmService.", unrouted)
+                    + " can't run on several shards, annotate them with @ShardRouting");
+        }
+    }
+
+    @Around("execution(public * tech.hidetora.application.data.service.CrmService.*(..))")
+    public Object route(ProceedingJoinPoint call) throws Throwable {
+        MethodSignature signature = (MethodSignature) call.getSignature();
+        ShardRouting routing = signature.getMethod().getAnnotation(ShardRouting.class);
+        if (ContactShards.current() != null || routing == null) {
+            return call.proceed(); // Methods CrmService inherits from Object have no routing.
+        }
+        Object[] args = call.getArgs();
+        return switch (routing.value()) {
+            case HOME -> call.proceed();
+            case ALL_CONCAT -> concat(shards.onAll(() -> proceed(call, args)));
+            case ALL_SUM -> sum(shards.onAll(() -> (Number) proceed(call, args)), signature.getReturnType());
+            case ALL_SUM_BY_ID -> sumById(shards.onAll(() -> proceed(call, args)));
+            case ALL_FIRST_PRESENT -> shards.onAll(() -> (Optional<?>) proceed(call, args)).stream()
+                    .filter(Optional::isPresent)
+                    .findFirst()
+                    .orElse(Optional.empty());
+            case PAGE -> page(call, (String) args[0], (Pageable) args[1]);
+            case SORTED -> {
+                Sort sort = ((Sort) args[1]).isSorted() ? (Sort) args[1] : CrmService.KEYSET_SORT;
+                yield merge(shards.onAll(() -> proceed(call, args[0], withId(sort))),
+                        Comparator.comparing(ContactShardingAspect::row, order(sort)), Integer.MAX_VALUE);
+            }
+            case KEYSET -> merge(shards.onAll(() -> proceed(call, args)),
+                    Comparator.comparing(ContactShardingAspect::row, KEYSET_ORDER), (int) args[args.length - 1]);
+            case STREAM -> stream((String) args[0]);
+            case CONTACT_OWNER -> {
+                Contact contact = (Contact) args[0];
+                Integer owner = contact == null || contact.getId() == null ? null : owner(contact.getId());
+                yield owner == null ? null : shards.on(owner, () -> proceed(call, args));
+            }
+            case COMPANY_SHARD -> shards.on(shardOf((Contact) args[0]), () -> proceed(call, args));
+            case SAVE -> save(call, (Contact) args[0]);
+            case SAVE_ALL -> saveAll(call, args);
+            case REASSIGN -> reassign(call, (Collection<?>) args[0], (Company) args[1]);
+        };
+    }
+
+    /**
+     * The public methods of CrmService without a ShardRouting, which this aspect wouldn't know how to run.
+     */
+    static List<String> unrouted() {
+        return Arrays.stream(CrmService.class.getDeclaredMethods())
+                .filter(method -> Modifier.isPublic(method.getModifiers()) && !Modifier.isStatic(method.getModifiers()))
+                .filter(method -> !method.isAnnotationPresent(ShardRouting.class))
+                .map(method -> method.getName() + Arrays.stream(method.getParameterTypes())
+                        .map(Class::getSimpleName)
+                        .collect(Collectors.joining(",", "(", ")")))
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Jobs that go through all the contacts run on every shard.
+     */
+    @Around("execution(public void tech.hidetora.application.data.service.ContactSearchIndex.rebuild()) || " +
+            "execution(public void tech.hidetora.application.data.service.ContactSearchIndex.buildOnStartup()) || " +
+            "execution(public void tech.hidetora.application.data.service.CompanyCounterRepairJob.repair())")
+    public Object onEveryShard(ProceedingJoinPoint call) throws Throwable {
+        if (ContactShards.current() != null) {
+            return call.proceed();
+        }
+        shards.onAll(() -> proceed(call, call.getArgs()));
+        return null;
+    }
+
+    // Every shard returns the matches up to the end of the page in the same order, the page is cut from their merge.
+    private <T> List<T> page(ProceedingJoinPoint call, String filter, Pageable pageable) {
+        Pageable shardPage;
+        Comparator<ContactRow> order;
+        int end = (int) Math.min(Integer.MAX_VALUE, pageable.getOffset() + pageable.getPageSize());
+        if (pageable.getSort().isSorted()) {
+            shardPage = PageRequest.of(0, end, withId(pageable.getSort()));
+            order = order(pageable.getSort());
+        } else if (filter != null && !filter.isEmpty() && searchIndex.canSearch(filter)) {
+            // The best matches of every shard, ranked the way the index ranks them.
+            shardPage = PageRequest.ofSize(end);
+            order = ContactSearchIndex.rankOrder(filter);
+        } else {
+            // An order is needed to merge the shards: the keyset order, which is the one of the unsorted search cache.
+            shardPage = PageRequest.of(0, end, CrmService.KEYSET_SORT);
+            order = KEYSET_ORDER;
+        }
+        List<List<T>> results = shards.onAll(() -> proceed(call, filter, shardPage));
+        return concat(results).stream()
+                .sorted(Comparator.comparing(ContactShardingAspect::row, order))
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The contacts in keyset order, read page by page from all shards while the stream is consumed.
+     * Filters use the LIKE search (see CrmService.findContactsAfter), the search index can't be paged by keyset.
+     */
+    private Stream<Contact> stream(String filter) {
+        List<Contact> first = crmService.findContactsAfter(filter, null, CHUNK_SIZE);
+        return Stream.iterate(first, page -> !page.isEmpty(), page -> page.size() < CHUNK_SIZE ? List.of()
+                        : crmService.findContactsAfter(filter, ContactCursor.of(page.get(page.size() - 1)), CHUNK_SIZE))
+                .flatMap(List::stream);
+    }
+
+    private Object save(ProceedingJoinPoint call, Contact contact) {
+        if (contact == null) {
+            return proceed(call, (Object) null); // Logs the mistake.
+        }
+        int target = shardOf(contact);
+        Integer owner = contact.getId() == null ? null : owner(contact.getId());
+        if (owner == null || owner == target) {
+            // New, or deleted in the meantime: the save on the shard of the company fails the version check.
+            return shards.on(target, () -> proceed(call, contact));
+        }
+        return move(contact, owner, target);
+    }
+
+    /**
+     * Inserts the contact on the new shard with the same id, then deletes it from the old one. If the delete fails,
+     * e.g. because the contact was changed in the meantime, the copy is deleted again.
+     * Until the delete commits, both shards have the contact.
+     */
+    private Contact move(Contact contact, int from, int to) {
+        Contact created = shards.on(to, () -> crmService.insertMovedContact(contact));
+        try {
+            shards.on(from, () -> {
+                crmService.deleteContact(contact);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            shards.on(to, () -> {
+                crmService.deleteContact(created);
+                return null;
+            });
+            throw e;
+        }
+        log.debug("Moved contact {} from shard {} to shard {}", contact.getId(), from, to);
+        return created;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ContactBatchWriter.BatchSaveResult saveAll(ProceedingJoinPoint call, Object[] args) {
+        List<Contact> contacts = ((Collection<Contact>) args[0]).stream().filter(Objects::nonNull).toList();
+        Map<Long, Integer> owners = owners(contacts.stream().map(Contact::getId).filter(Objects::nonNull).toList());
+        Map<Integer, List<Contact>> byShard = new HashMap<>();
+        List<Contact> moving = new ArrayList<>();
+        for (Contact contact : contacts) {
+            int target = shardOf(contact);
+            Integer owner = contact.getId() == null ? null : owners.get(contact.getId());
+            if (owner == null || owner == target) {
+                byShard.computeIfAbsent(target, shard -> new ArrayList<>()).add(contact);
+            } else {
+                moving.add(contact);
+            }
+        }
+        List<ContactBatchWriter.BatchSaveResult> results = new ArrayList<>(shards.onEach(shard -> {
+            List<Contact> shardContacts = byShard.get(shard);
+            if (shardContacts == null) {
+                return new ContactBatchWriter.BatchSaveResult(List.of(), 0, List.of());
+            }
+            Object[] shardArgs = args.clone();
+            shardArgs[0] = shardContacts;
+            return (ContactBatchWriter.BatchSaveResult) proceed(call, shardArgs);
+        }));
+        // Rare, so the moves aren't batched.
+        List<Contact> moved = new ArrayList<>();
+        List<ContactBatchWriter.Conflict> conflicts = new ArrayList<>();
+        for (Contact contact : moving) {
+            try {
+                moved.add(move(contact, owners.get(contact.getId()), shardOf(contact)));
+            } catch (OptimisticLockingFailureException e) {
+                conflicts.add(new ContactBatchWriter.Conflict(contact, null, "Changed concurrently while moving"));
+            }
+        }
+        results.add(new ContactBatchWriter.BatchSaveResult(moved, 0, conflicts));
+        return new ContactBatchWriter.BatchSaveResult(
+                results.stream().flatMap(result -> result.saved().stream()).toList(),
+                results.stream().mapToInt(ContactBatchWriter.BatchSaveResult::merged).sum(),
+                results.stream().flatMap(result -> result.conflicts().stream()).toList());
+    }
+
+    /**
+     * Reassigns the contacts on the shard of the company with the set-based update, and moves the ones
+     * of the other shards there.
+     */
+    private int reassign(ProceedingJoinPoint call, Collection<?> contactIds, Company company) {
+        int target = shards.shardOf(company.getId());
+        int updated = shards.on(target, () -> (Integer) proceed(call, contactIds, company));
+        List<Long> ids = contactIds.stream().map(Long.class::cast).toList();
+        List<Contact> elsewhere = concat(shards.onEach(shard -> {
+            List<Contact> found = new ArrayList<>();
+            if (shard != target) {
+                for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+                    found.addAll(contactRepository.findAllWithReferencesByIdIn(
+                            ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size()))));
+                }
+            }
+            return found;
+        }));
+        for (Contact contact : elsewhere) {
+            contact.setCompany(company);
+            crmService.saveContact(contact);
+        }
+        return updated + elsewhere.size();
+    }
+
+    private int shardOf(Contact contact) {
+        return shards.shardOf(contact.getCompany() == null ? null : contact.getCompany().getId());
+    }
+
+    /**
+     * The shard holding the contact, or null when there is no such contact.
+     */
+    private Integer owner(Long id) {
+        List<ContactReferences> found = shards.onAll(() -> contactRepository.findReferences(id));
+        for (int shard = 0; shard < found.size(); shard++) {
+            if (found.get(shard) != null) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    private Map<Long, Integer> owners(List<Long> ids) {
+        Map<Long, Integer> owners = new HashMap<>();
+        List<List<Long>> found = shards.onEach(shard -> {
+            List<Long> present = new ArrayList<>();
+            for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+                contactRepository.findRowsByIdIn(ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size())))
+                        .forEach(row -> present.add(row.id()));
+            }
+            return present;
+        });
+        for (int shard = 0; shard < found.size(); shard++) {
+            for (Long id : found.get(shard)) {
+                owners.put(id, shard);
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * The order of the sort in memory, for the properties the contacts can be sorted by.
+     * Texts are compared by code point, the order the shards sort them in (see db/shard/&lt;vendor&gt;):
+     * with the language rules of a database locale, a merged page could miss rows or repeat them.
+     */
+    private static Comparator<ContactRow> order(Sort sort) {
+        Comparator<ContactRow> order = null;
+        for (Sort.Order property : sort) {
+            Comparator<ContactRow> next = switch (property.getProperty()) {
+                case "id" -> Comparator.comparing(ContactRow::id);
+                case "firstName" -> text(ContactRow::firstName);
+                case "lastName" -> text(ContactRow::lastName);
+                case "email" -> text(ContactRow::email);
+                case "status.name" -> text(ContactRow::statusName);
+                case "company.name" -> text(ContactRow::companyName);
+                default -> throw new IllegalArgumentException(
+                        "Contacts of several shards can't be sorted by " + property.getProperty());
+            };
+            if (property.isDescending()) {
+                next = next.reversed();
+            }
+            order = order == null ? next : order.thenComparing(next);
+        }
+        return order == null ? Comparator.comparing(ContactRow::id) : order.thenComparing(ContactRow::id);
+    }
+
+    private static Comparator<ContactRow> text(Function<ContactRow, String> property) {
+        return Comparator.comparing(property, Comparator.nullsFirst(ContactShardingAspect::compareCodePoints));
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Boolean.compare(i < a.length(), j < b.length());
+    }
+
+    // Ties are broken by id on the shards as in memory, or pages could overlap.
+    private static Sort withId(Sort sort) {
+        return sort.getOrderFor("id") == null ? sort.and(Sort.by("id")) : sort;
+    }
+
+    // The grid row of a contact, or the row itself: merges compare the results of any query by the row.
+    private static ContactRow row(Object item) {
+        if (item instanceof ContactRow row) {
+            return row;
+        }
+        Contact contact = (Contact) item;
+        return new ContactRow(contact.getId(), contact.getFirstName(), contact.getLastName(), contact.getEmail(),
+                contact.getStatus() == null ? null : contact.getStatus().getName(),
+                contact.getCompany() == null ? null : contact.getCompany().getName());
+    }
+
+    private static <T> List<T> merge(List<List<T>> results, Comparator<? super T> order, int limit) {
+        return concat(results).stream().sorted(order).limit(limit).collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> concat(List<?> results) {
+        List<T> all = new ArrayList<>();
+        for (Object result : results) {
+            all.addAll((List<T>) result);
+        }
+        return all;
+    }
+
+    private static Object sum(List<Number> results, Class<?> type) {
+        long sum = results.stream().mapToLong(Number::longValue).sum();
+        return type == int.class || type == Integer.class ? (Object) Math.toIntExact(sum) : (Object) sum;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<IdCount> sumById(List<Object> results) {
+        Map<Long, Long> counts = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+        for (Object result : results) {
+            for (IdCount count : (List<IdCount>) result) {
+                counts.merge(count.id(), count.count(), Long::sum);
+            }
+        }
+        return counts.entrySet().stream().map(entry -> new IdCount(entry.getKey(), entry.getValue())).toList();
+    }
+
+    // The advised method doesn't declare checked exceptions.
+    @SuppressWarnings("unchecked")
+    private static <T> T proceed(ProceedingJoinPoint call, Object... args) {
+        try {
+            return (T) call.proceed(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+}
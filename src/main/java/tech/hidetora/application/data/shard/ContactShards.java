@@ -0,0 +1,147 @@
+package tech.hidetora.application.data.shard;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import tech.hidetora.application.config.QueryExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Which shard holds the contacts of a company, and running work on one or all of the shards.
+ * <p>
+ * Without the shards profile there is a single shard and all work runs on the calling thread.
+ * With it (see ShardDataSourceConfig), the contacts of a company live on shard companyId mod the number of shards.
+ * Work for a shard then runs on a thread of its own with the shard bound to it: ShardRoutingDataSource gives
+ * the transactions of that thread connections to the shard, and its persistence context holds nothing of the
+ * other shards. Threads without a shard use the first one, the home shard.
+ */
+@Component
+@Slf4j
+public class ContactShards {
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final int count;
+    // Null without sharding.
+    private final ExecutorService executor;
+
+    public ContactShards(@Value("${crm.shards.urls:}") String[] urls) {
+        this.count = (int) Math.max(1, Arrays.stream(urls).filter(StringUtils::hasText).count());
+        if (count == 1) {
+            executor = null;
+        } else {
+            // Not the query executor: its background queries wait here for the shards, on a pool of their own.
+            ExecutorService virtualThreads = QueryExecutor.newVirtualThreadPerTaskExecutor();
+            AtomicInteger threads = new AtomicInteger();
+            executor = virtualThreads != null ? virtualThreads : Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "shard-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            log.info("Contacts are sharded by company over {} databases", count);
+        }
+    }
+
+    /**
+     * The shard bound to the current thread, or null for the home shard.
+     */
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Tells the shards apart in caches of shard-local results, empty on the home shard and without sharding.
+     */
+    public static String currentKey() {
+        Integer shard = CURRENT.get();
+        return shard == null ? "" : shard + ":";
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int shardOf(Long companyId) {
+        return companyId == null ? 0 : (int) Math.floorMod(companyId, (long) count);
+    }
+
+    /**
+     * Runs the work on the shard and returns its result.
+     */
+    public <T> T on(int shard, Supplier<T> work) {
+        if (executor == null || Integer.valueOf(shard).equals(CURRENT.get())) {
+            return work.get();
+        }
+        return join(submit(shard, work));
+    }
+
+    /**
+     * Runs the work on every shard at the same time, and returns the results in the order of the shards.
+     */
+    public <T> List<T> onAll(Supplier<T> work) {
+        return onEach(shard -> work.get());
+    }
+
+    /**
+     * Like onAll(), for work that depends on the shard it runs on.
+     */
+    public <T> List<T> onEach(IntFunction<T> work) {
+        if (executor == null) {
+            return List.of(work.apply(0));
+        }
+        List<CompletableFuture<T>> running = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            int on = shard;
+            running.add(submit(shard, () -> work.apply(on)));
+        }
+        List<T> results = new ArrayList<>(count);
+        for (CompletableFuture<T> result : running) {
+            results.add(join(result));
+        }
+        return results;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(int shard, Supplier<T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            CURRENT.set(shard);
+            try {
+                return work.get();
+            } finally {
+                CURRENT.remove();
+            }
+        }, executor);
+    }
+
+    // Rethrows what the work threw, as if it had run on the calling thread.
+    private static <T> T join(CompletableFuture<T> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
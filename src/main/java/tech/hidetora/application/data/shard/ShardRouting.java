@@ -0,0 +1,79 @@
+package tech.hidetora.application.data.shard;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * How a method of CrmService runs with the shards profile, see ContactShardingAspect.
+ * <p>
+ * Every public method of CrmService needs one: the aspect refuses to start when one is missing,
+ * so a new method can't end up running on the home shard only.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ShardRouting {
+    Strategy value();
+
+    enum Strategy {
+        /**
+         * On the home shard: companies and statuses, which every shard has a copy of.
+         */
+        HOME,
+        /**
+         * On every shard, the returned lists are concatenated.
+         */
+        ALL_CONCAT,
+        /**
+         * On every shard, the returned numbers are added up.
+         */
+        ALL_SUM,
+        /**
+         * On every shard, the returned IdCount lists are added up by id.
+         */
+        ALL_SUM_BY_ID,
+        /**
+         * On every shard, the first present Optional is returned.
+         */
+        ALL_FIRST_PRESENT,
+        /**
+         * (String filter, Pageable): the page is cut from the merged results of all shards.
+         */
+        PAGE,
+        /**
+         * (String filter, Sort): the sorted results of all shards are merged.
+         */
+        SORTED,
+        /**
+         * Keyset pages ending with an int limit: the pages of all shards are merged in keyset order and cut.
+         */
+        KEYSET,
+        /**
+         * (String filter): the stream reads page by page from all shards.
+         */
+        STREAM,
+        /**
+         * (Contact): on the shard holding the contact, nothing when no shard has it.
+         */
+        CONTACT_OWNER,
+        /**
+         * (Contact): on the shard of the company of the contact, not looking for it on the other shards.
+         */
+        COMPANY_SHARD,
+        /**
+         * (Contact): on the shard of the company of the contact, moved there when another shard holds it.
+         */
+        SAVE,
+        /**
+         * (Collection of contacts, ...): grouped by the shard of their companies, moved like SAVE.
+         */
+        SAVE_ALL,
+        /**
+         * (Collection of ids, Company): on the shard of the company, moving the contacts of the other shards there.
+         */
+        REASSIGN
+    }
+}
@@ -0,0 +1,109 @@
+package tech.hidetora.application.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.hidetora.application.data.entity.AppUser;
+import tech.hidetora.application.data.repository.AppUserRepository;
+
+import java.time.Duration;
+
+/**
+ * Users and their roles from the APP_USER table.
+ * <p>
+ * Looked up users are cached for crm.security.user-cache.ttl, so a login storm doesn't query the database
+ * for every attempt. Changes made in the database directly take up to that long to apply, unless evict() is called.
+ * <p>
+ * Spring Security calls updatePassword() after a successful login with a hash that no longer matches the
+ * configured encoding (e.g. after crm.security.bcrypt-strength was raised), so hashes are upgraded transparently.
+ */
+@Service
+@Slf4j
+public class AppUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
+    private final AppUserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final PasswordEncoder passwordEncoder;
+    private final boolean demoUsers;
+    private final Cache<String, UserDetails> users;
+
+    public AppUserDetailsService(AppUserRepository userRepository,
+                                 TransactionTemplate transactionTemplate,
+                                 PasswordEncoder passwordEncoder,
+                                 @Value("${crm.security.demo-users:false}") boolean demoUsers,
+                                 @Value("${crm.security.user-cache.max-size:10000}") long maxSize,
+                                 @Value("${crm.security.user-cache.ttl:PT5M}") Duration ttl) {
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.passwordEncoder = passwordEncoder;
+        this.demoUsers = demoUsers;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        UserDetails cached = users.get(username, name -> userRepository.findByUsername(name)
+                .map(AppUserDetailsService::toUserDetails)
+                .orElse(null));
+        if (cached == null) {
+            throw new UsernameNotFoundException(username);
+        }
+        // A copy: Spring Security erases the password of the returned instance after the login.
+        return User.withUserDetails(cached).build();
+    }
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        transactionTemplate.executeWithoutResult(status ->
+                userRepository.updatePassword(user.getUsername(), newPassword));
+        users.invalidate(user.getUsername());
+        log.debug("Upgraded the password hash of {}", user.getUsername());
+        return User.withUserDetails(user).password(newPassword).build();
+    }
+
+    /**
+     * Forgets the cached user, call it after changing the user in the database.
+     */
+    public void evict(String username) {
+        users.invalidate(username);
+    }
+
+    /**
+     * Creates the demo users user/password and admin/admin while there are no users at all,
+     * if crm.security.demo-users is set (development only).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createDemoUsers() {
+        if (!demoUsers) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (userRepository.count() == 0) {
+                userRepository.save(new AppUser("user", passwordEncoder.encode("password"), "USER", true));
+                userRepository.save(new AppUser("admin", passwordEncoder.encode("admin"), "USER,ADMIN", true));
+                log.info("Created the demo users 'user' and 'admin', change their passwords in production");
+            }
+        });
+    }
+
+    private static UserDetails toUserDetails(AppUser user) {
+        return User.withUsername(user.getUsername())
+                .password(user.getPassword())
+                .roles(user.getRoles().split("\\s*,\\s*"))
+                .disabled(!user.isEnabled())
+                .build();
+    }
+}
@@ -1,20 +1,26 @@
 package tech.hidetora.application.security;
 
 import com.vaadin.flow.spring.security.VaadinWebSecurity;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import tech.hidetora.application.views.LoginView;
 
+import java.time.Duration;
+import java.util.Map;
+
 /**
  * @author Hidetora
  * @version 1.0.0
@@ -33,25 +39,55 @@ public class SecurityConfig extends VaadinWebSecurity {
         setLoginView(http, LoginView.class);
     }
 
+    /**
+     * The REST API (see ContactController) has its own filter chain, checked before the one of the views.
+     * Clients send the credentials of a CRM user with every request (HTTP Basic) and get 401 instead of the
+     * login page. No session is created, so there is no session cookie that CSRF protection would have to guard.
+     * Every request verifies the password hash, within the limit of crm.security.max-concurrent-hashes.
+     */
     @Bean
-    public UserDetailsService users() {
-        UserDetails user = User.builder()
-                .username("user")
-                // password = password with this hash, don't tell anybody :-)
-                .password(passwordEncoder().encode("password"))
-                .roles("USER")
+    @Order(1)
+    SecurityFilterChain apiFilterChain(HttpSecurity http) throws Exception {
+        return http.securityMatcher("/api/**")
+                .authorizeHttpRequests(auth -> auth.anyRequest().authenticated())
+                .httpBasic(Customizer.withDefaults())
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .csrf(csrf -> csrf.disable())
                 .build();
-        UserDetails admin = User.builder()
-                .username("admin")
-//                .password("{bcrypt}$2a$10$GRLdNijSQMUvl/au9ofL.eDwmoohzzS7.rmNSJZ.0FxO/BTk76klW")
-                .password(passwordEncoder().encode("admin"))
-                .roles("USER", "ADMIN")
+    }
+
+    /**
+     * The actuator endpoints have their own filter chain too. Only health is public, for the health checks of
+     * load balancers and orchestrators. The others, prometheus included, need a user with the METRICS role
+     * (HTTP Basic, no session): create one in APP_USER for the Prometheus scraper.
+     */
+    @Bean
+    @Order(2)
+    SecurityFilterChain actuatorFilterChain(HttpSecurity http) throws Exception {
+        return http.securityMatcher(EndpointRequest.toAnyEndpoint())
+                .authorizeHttpRequests(auth -> auth
+                        .requestMatchers(EndpointRequest.to("health")).permitAll()
+                        .anyRequest().hasRole("METRICS"))
+                .httpBasic(Customizer.withDefaults())
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .csrf(csrf -> csrf.disable())
                 .build();
-        return new InMemoryUserDetailsManager(user, admin);
     }
 
+    /**
+     * Users are stored in the database, see AppUserDetailsService.
+     * Hashes are BCrypt with crm.security.bcrypt-strength, prefixed with {bcrypt}. Hashes without a prefix
+     * are read as BCrypt too. Both older kinds are upgraded when their user logs in.
+     * At most crm.security.max-concurrent-hashes passwords are hashed at the same time (0 = one per core).
+     */
     @Bean
-    PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    PasswordEncoder passwordEncoder(@Value("${crm.security.bcrypt-strength:10}") int strength,
+                                    @Value("${crm.security.max-concurrent-hashes:0}") int maxConcurrentHashes,
+                                    @Value("${crm.security.hash-wait:PT2S}") Duration hashWait) {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(strength);
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bcrypt));
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return new BoundedPasswordEncoder(encoder, maxConcurrentHashes > 0
+                ? maxConcurrentHashes : Runtime.getRuntime().availableProcessors(), hashWait);
     }
 }
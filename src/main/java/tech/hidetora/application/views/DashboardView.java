@@ -1,6 +1,8 @@
 package tech.hidetora.application.views;
 
-import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.charts.Chart;
 import com.vaadin.flow.component.charts.model.ChartType;
 import com.vaadin.flow.component.charts.model.DataSeries;
@@ -9,9 +11,11 @@ import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.shared.Registration;
 import com.vaadin.flow.theme.lumo.LumoUtility;
 import jakarta.annotation.security.RolesAllowed;
-import tech.hidetora.application.data.service.CrmService;
+import tech.hidetora.application.data.service.ContactChangeBroadcaster;
+import tech.hidetora.application.data.service.DashboardStatsService;
 
 /**
  * @author Hidetora
@@ -23,36 +27,61 @@ import tech.hidetora.application.data.service.CrmService;
 @PageTitle("Dashboard | Vaadin CRM")
 @RolesAllowed("ADMIN") // Only users with the ROLE_ADMIN role can access the view.
 public class DashboardView extends VerticalLayout {
-    private final CrmService service;
+    // The chart shows the largest companies, the rest are grouped into a single "Other" slice.
+    private static final int TOP_COMPANIES = 10;
 
-    public DashboardView(CrmService service) { // Takes CrmService as a constructor parameter and saves it as a field.
-        this.service = service;
+    private final DashboardStatsService stats;
+    private final ContactChangeBroadcaster broadcaster;
+    private final Span contactStats = new Span();
+    private final Chart chart = new Chart(ChartType.PIE);
+    private Registration changeRegistration;
+
+    public DashboardView(DashboardStatsService stats, ContactChangeBroadcaster broadcaster) { // Takes DashboardStatsService as a constructor parameter and saves it as a field.
+        this.stats = stats;
+        this.broadcaster = broadcaster;
         addClassName("dashboard-view");
         setDefaultHorizontalComponentAlignment(Alignment.CENTER); // Centers the contents of the layout.
-        add(getContactStats(), getCompaniesChart());
-    }
-
-    private Component getContactStats() {
-        Span stats = new Span(service.countContacts() + " contacts"); // Calls the service to get the number of contacts.
-        stats.addClassNames(
+        contactStats.addClassNames(
                 LumoUtility.FontSize.XLARGE,
                 LumoUtility.Margin.Top.MEDIUM);
-        return stats;
+        updateContactStats();
+        chart.getConfiguration().setSeries(getCompaniesSeries());
+        add(contactStats, chart);
+    }
+
+    /**
+     * While the dashboard is shown, every batch of contact changes redraws it from the in-memory statistics.
+     */
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        UI ui = attachEvent.getUI();
+        changeRegistration = broadcaster.register(batch -> ui.access(() -> {
+            updateContactStats();
+            chart.getConfiguration().setSeries(getCompaniesSeries());
+            chart.drawChart();
+        }));
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        changeRegistration.remove();
+        changeRegistration = null;
     }
 
-    private Chart getCompaniesChart() {
-        Chart chart = new Chart(ChartType.PIE);
+    private void updateContactStats() {
+        contactStats.setText(stats.totalContacts() + " contacts"); // Reads the number of contacts kept in memory.
+    }
 
+    private DataSeries getCompaniesSeries() {
         DataSeries dataSeries = new DataSeries();
         /**
-         * Calls the service to get all companies, then creates a DataSeriesItem for each,
-         * containing the company name and employee count.
-         * Don’t worry about the compilation error,the missing method is added in the next step.
+         * Gets the number of contacts of the largest companies from the statistics service,
+         * then creates a DataSeriesItem for each, containing the company name and contact count.
+         * No company entity is loaded.
          * */
-        service.findAllCompanies().forEach(company ->
-                dataSeries.add(new DataSeriesItem(company.getName(), company.getEmployeeCount())));
-        chart.getConfiguration().setSeries(dataSeries);
-        return chart;
+        stats.contactsByCompany(TOP_COMPANIES).forEach(count ->
+                dataSeries.add(new DataSeriesItem(count.name(), count.count())));
+        return dataSeries;
     }
 
 }
@@ -0,0 +1,120 @@
+package tech.hidetora.application.views;
+
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.html.Paragraph;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.progressbar.ProgressBar;
+import com.vaadin.flow.component.upload.Upload;
+import com.vaadin.flow.component.upload.receivers.FileBuffer;
+import com.vaadin.flow.router.PageTitle;
+import com.vaadin.flow.router.Route;
+import jakarta.annotation.security.RolesAllowed;
+import lombok.extern.slf4j.Slf4j;
+import tech.hidetora.application.data.service.ContactImportService;
+import tech.hidetora.application.data.service.ContactImportService.ImportProgress;
+import tech.hidetora.application.data.service.ContactImportService.ImportResult;
+import tech.hidetora.application.data.service.ContactImportService.RowError;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Bulk import of contacts from a CSV or JSON file.
+ * The file is buffered to a temporary file and imported in the background,
+ * progress is pushed to the browser after every chunk.
+ */
+@Route(value = "import", layout = MainLayout.class)
+@PageTitle("Import | Vaadin CRM")
+@RolesAllowed("ADMIN") // Imports create contacts for everybody, only admins can start them.
+@Slf4j
+public class ImportView extends VerticalLayout {
+    private final ContactImportService importService;
+    private final FileBuffer buffer = new FileBuffer(); // Keeps the upload on disk instead of in the session.
+    private final Upload upload = new Upload(buffer);
+    private final ProgressBar progressBar = new ProgressBar();
+    private final Span status = new Span();
+    private final Grid<RowError> errors = new Grid<>();
+    private UI ui;
+
+    public ImportView(ContactImportService importService) {
+        this.importService = importService;
+        addClassName("import-view");
+        setSizeFull();
+
+        upload.setAcceptedFileTypes(".csv", ".json", ".ndjson", "text/csv", "application/json");
+        upload.setDropAllowed(true);
+        upload.addSucceededListener(event -> startImport(event.getFileName()));
+
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(false);
+
+        errors.addColumn(RowError::line).setHeader("Line").setAutoWidth(true).setFlexGrow(0);
+        errors.addColumn(RowError::message).setHeader("Error");
+        errors.setVisible(false);
+
+        add(new Paragraph("Upload a CSV file with the columns firstName, lastName, email, company and status, "
+                + "or a JSON file with an array of objects with the same properties. "
+                + "Companies and statuses are matched by name."), upload, progressBar, status, errors);
+    }
+
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        ui = attachEvent.getUI();
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        ui = null; // A running import continues, it just no longer reports to this view.
+    }
+
+    private void startImport(String fileName) {
+        File file = buffer.getFileData().getFile();
+        upload.setVisible(false);
+        progressBar.setVisible(true);
+        errors.setVisible(false);
+        status.setText("Importing " + fileName + "...");
+
+        importService.startImport(file.toPath(), ContactImportService.Format.of(fileName), this::showProgress)
+                .whenComplete((result, failure) -> {
+                    try {
+                        Files.deleteIfExists(file.toPath());
+                    } catch (IOException e) {
+                        log.warn("Could not delete the uploaded file {}", file, e);
+                    }
+                    access(() -> showResult(result, failure));
+                });
+    }
+
+    // Called from the import thread.
+    private void showProgress(ImportProgress progress) {
+        access(() -> status.setText(String.format("%,d rows read, %,d imported, %,d failed",
+                progress.processed(), progress.imported(), progress.failed())));
+    }
+
+    private void showResult(ImportResult result, Throwable failure) {
+        progressBar.setVisible(false);
+        upload.clearFileList();
+        upload.setVisible(true);
+        if (failure != null) {
+            log.error("Contact import failed", failure);
+            status.setText("The import failed: " + failure.getMessage());
+            return;
+        }
+        status.setText(String.format("Imported %,d contacts in %.1f s, %,d rows failed",
+                result.imported(), result.duration().toMillis() / 1000.0, result.failed()));
+        errors.setItems(result.errors());
+        errors.setVisible(!result.errors().isEmpty());
+    }
+
+    private void access(Runnable command) {
+        UI current = ui;
+        if (current != null) {
+            current.access(command::run);
+        }
+    }
+}
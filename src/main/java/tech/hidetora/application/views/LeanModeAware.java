@@ -0,0 +1,14 @@
+package tech.hidetora.application.views;
+
+/**
+ * A view that can trade convenience for a smaller session, e.g. by holding fewer rows in memory.
+ * SessionFootprintAnalyzer switches the open views of a session over its budget to lean mode,
+ * views created later in that session check SessionFootprintAnalyzer.isLeanMode() themselves.
+ * Lean mode lasts until the session ends.
+ */
+public interface LeanModeAware {
+    /**
+     * Called with the session lock held, at most once per view.
+     */
+    void enterLeanMode();
+}
@@ -71,7 +71,9 @@ public class MainLayout extends AppLayout { // AppLayout is a Vaadin layout with
     private void createDrawer() {
         addToDrawer(new VerticalLayout(
                 new RouterLink("List", ListView.class),
-                new RouterLink("Dashboard", DashboardView.class)
+                new RouterLink("Dashboard", DashboardView.class),
+                new RouterLink("Import", ImportView.class),
+                new RouterLink("Sessions", SessionsView.class)
         ));
     }
 }
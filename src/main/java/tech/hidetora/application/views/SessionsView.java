@@ -0,0 +1,80 @@
+package tech.hidetora.application.views;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.html.Paragraph;
+import com.vaadin.flow.component.icon.Icon;
+import com.vaadin.flow.component.icon.VaadinIcon;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.router.PageTitle;
+import com.vaadin.flow.router.Route;
+import jakarta.annotation.security.RolesAllowed;
+import tech.hidetora.application.config.SessionFootprintAnalyzer;
+import tech.hidetora.application.config.SessionFootprintAnalyzer.ComponentFootprint;
+import tech.hidetora.application.config.SessionFootprintAnalyzer.SessionFootprint;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.List;
+
+/**
+ * The estimated memory footprint of every open session, and the components of the selected session
+ * that hold most of it. See SessionFootprintAnalyzer for how the sizes are estimated.
+ */
+@Route(value = "sessions", layout = MainLayout.class)
+@PageTitle("Sessions | Vaadin CRM")
+@RolesAllowed("ADMIN") // Shows who is logged in.
+public class SessionsView extends VerticalLayout {
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofLocalizedTime(FormatStyle.MEDIUM)
+            .withZone(ZoneId.systemDefault());
+
+    private final SessionFootprintAnalyzer analyzer;
+    private final Grid<SessionFootprint> sessions = new Grid<>();
+    private final Grid<ComponentFootprint> components = new Grid<>();
+
+    public SessionsView(SessionFootprintAnalyzer analyzer) {
+        this.analyzer = analyzer;
+        addClassName("sessions-view");
+        setSizeFull();
+
+        sessions.addColumn(SessionFootprint::user).setHeader("User");
+        sessions.addColumn(SessionFootprint::uis).setHeader("Tabs").setAutoWidth(true).setFlexGrow(0);
+        sessions.addColumn(footprint -> kilobytes(footprint.bytes())).setHeader("Size")
+                .setComparator(SessionFootprint::bytes).setAutoWidth(true).setFlexGrow(0);
+        sessions.addColumn(SessionFootprint::budget).setHeader("Budget").setAutoWidth(true).setFlexGrow(0);
+        sessions.addColumn(footprint -> TIME.format(footprint.measuredAt())).setHeader("Measured")
+                .setAutoWidth(true).setFlexGrow(0);
+        sessions.asSingleSelect().addValueChangeListener(event -> components.setItems(
+                event.getValue() == null ? List.of() : event.getValue().components()));
+
+        components.addColumn(ComponentFootprint::path).setHeader("Component (with its children)");
+        components.addColumn(footprint -> kilobytes(footprint.bytes())).setHeader("Size")
+                .setAutoWidth(true).setFlexGrow(0);
+
+        Button measure = new Button("Measure now", new Icon(VaadinIcon.REFRESH));
+        measure.addClickListener(click -> {
+            measure.setEnabled(false);
+            UI ui = UI.getCurrent();
+            // Completes after this request, the own session can only be measured once it is released.
+            analyzer.analyzeAll().thenRun(() -> ui.access(() -> {
+                measure.setEnabled(true);
+                refresh();
+            }));
+        });
+
+        add(new Paragraph("Estimated serialized size of the open sessions. Sessions above their budget are logged, "
+                + "or switched to lean mode, where views hold less data."), measure, sessions, components);
+        refresh();
+    }
+
+    private void refresh() {
+        sessions.setItems(analyzer.footprints());
+        components.setItems(List.of());
+    }
+
+    private static String kilobytes(long bytes) {
+        return String.format("%,d KB", bytes / 1024);
+    }
+}
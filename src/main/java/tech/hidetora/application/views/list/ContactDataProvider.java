@@ -0,0 +1,166 @@
+package tech.hidetora.application.views.list;
+
+import com.vaadin.flow.data.provider.AbstractBackEndDataProvider;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.spring.data.VaadinSpringDataHelpers;
+import org.springframework.data.domain.PageRequest;
+import tech.hidetora.application.data.projection.ContactRow;
+import tech.hidetora.application.data.service.ContactCursor;
+import tech.hidetora.application.data.service.CrmService;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Lazy data provider for the contact grid.
+ * The grid only asks for the rows that are visible (plus a small buffer),
+ * so the session never holds more than a few pages of contacts.
+ * Each page is a list of ContactRow projections loaded with a single statement.
+ * The filter is the text typed in the filter field.
+ */
+public class ContactDataProvider extends AbstractBackEndDataProvider<ContactRow, String> {
+    // Enough to scroll forward through a few thousand pages without ever falling back to an offset query.
+    private static final int MAX_CURSORS = 1000;
+    // In lean mode, deep scrolling falls back to offset queries sooner.
+    private static final int LEAN_MAX_CURSORS = 50;
+
+    private final CrmService service;
+    private int maxCursors = MAX_CURSORS;
+    private boolean leanMode;
+
+    /**
+     * Keyset cursors by grid offset: the cursor stored at offset N is the last contact before row N.
+     * When the grid scrolls forward page by page, the next page is fetched with a keyset query.
+     */
+    private final Map<Integer, ContactCursor> cursors = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ContactCursor> eldest) {
+            return size() > maxCursors;
+        }
+    };
+
+    /**
+     * The first page and the size of a search that ListView ran in the background.
+     */
+    public record Prefetch(String filter, List<QuerySortOrder> sortOrders, List<ContactRow> rows, long count) {
+
+        boolean matches(Query<ContactRow, String> query) {
+            return matchesFilter(query) && sameSort(sortOrders, query.getSortOrders());
+        }
+
+        // Size queries come without sort orders.
+        boolean matchesFilter(Query<ContactRow, String> query) {
+            return Objects.equals(normalize(filter), normalize(query.getFilter().orElse(null)));
+        }
+
+        private static String normalize(String filter) {
+            return filter == null || filter.isEmpty() ? null : filter;
+        }
+
+        private static boolean sameSort(List<QuerySortOrder> a, List<QuerySortOrder> b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (!a.get(i).getSorted().equals(b.get(i).getSorted())
+                        || a.get(i).getDirection() != b.get(i).getDirection()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Answers the next size and first page requests of the grid without a query, until the data changes.
+    private Prefetch prefetch;
+
+    public ContactDataProvider(CrmService service) {
+        this.service = service;
+    }
+
+    /**
+     * Keeps fewer cursors, and drops a prefetched page as soon as the grid got it.
+     */
+    public void enterLeanMode() {
+        leanMode = true;
+        maxCursors = LEAN_MAX_CURSORS;
+        cursors.clear();
+    }
+
+    /**
+     * Serves the grid from an already loaded first page. Call it after setting the filter of the search.
+     */
+    public void usePrefetched(Prefetch prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    protected Stream<ContactRow> fetchFromBackEnd(Query<ContactRow, String> query) {
+        String filter = query.getFilter().orElse(null);
+        if (prefetch != null && prefetch.matches(query) && query.getOffset() == 0
+                && (query.getLimit() <= prefetch.rows().size() || prefetch.rows().size() == prefetch.count())) {
+            List<ContactRow> page = prefetch.rows().subList(0, Math.min(query.getLimit(), prefetch.rows().size()));
+            if (!page.isEmpty() && query.getSortOrders().isEmpty() && (filter == null || filter.isEmpty())) {
+                // The prefetched page is in keyset order too, the next page can continue from it.
+                cursors.put(page.size(), ContactCursor.of(page.get(page.size() - 1)));
+            }
+            if (leanMode) {
+                prefetch = null;
+            }
+            return page.stream();
+        }
+        if (!query.getSortOrders().isEmpty() || (filter != null && !filter.isEmpty())) {
+            // Converts the offset, limit and sort orders of the grid into a Spring Data PageRequest.
+            // Without a sort order, search results come best match first.
+            return service.findContactRows(filter, VaadinSpringDataHelpers.toSpringPageRequest(query)).stream();
+        }
+
+        // Without a filter and a user selected sort, the grid is shown in keyset order.
+        List<ContactRow> page;
+        ContactCursor cursor = cursors.get(query.getOffset());
+        if (query.getOffset() == 0 || cursor != null) {
+            page = service.findContactRowsAfter(cursor, query.getLimit());
+        } else {
+            // The user jumped ahead (e.g. dragged the scroll bar): only an offset query can get there.
+            page = service.findContactRows(null,
+                    PageRequest.of(query.getPage(), query.getPageSize(), CrmService.KEYSET_SORT));
+        }
+        if (!page.isEmpty()) {
+            cursors.put(query.getOffset() + page.size(), ContactCursor.of(page.get(page.size() - 1)));
+        }
+        return page.stream();
+    }
+
+    @Override
+    protected int sizeInBackEnd(Query<ContactRow, String> query) {
+        if (prefetch != null && prefetch.matchesFilter(query)) {
+            return (int) prefetch.count();
+        }
+        return (int) service.countContacts(query.getFilter().orElse(null));
+    }
+
+    @Override
+    public void refreshAll() {
+        // The data changed, so the rows at the remembered offsets may have moved.
+        cursors.clear();
+        prefetch = null;
+        super.refreshAll();
+    }
+
+    @Override
+    public void refreshItem(ContactRow item) {
+        // An edit may have changed the sort key of the row: the pages after it start elsewhere now.
+        cursors.clear();
+        prefetch = null;
+        super.refreshItem(item);
+    }
+
+    @Override
+    public Object getId(ContactRow item) {
+        return item.id();
+    }
+}
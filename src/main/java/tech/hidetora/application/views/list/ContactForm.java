@@ -16,8 +16,7 @@ import com.vaadin.flow.shared.Registration;
 import tech.hidetora.application.data.entity.Company;
 import tech.hidetora.application.data.entity.Contact;
 import tech.hidetora.application.data.entity.Status;
-
-import java.util.List;
+import tech.hidetora.application.data.service.ReferenceDataService;
 
 /**
  * @author Hidetora
@@ -42,14 +41,19 @@ public class ContactForm extends FormLayout {
     Button delete = new Button("Delete");
     Button close = new Button("Cancel");
 
-    public ContactForm(List<Company> companies, List<Status> statuses) {
+    public ContactForm(ReferenceDataService referenceData) {
         // Gives the component a CSS class name, so you can style it later.
         addClassName("contact-form");
         // Binds the fields in this instance of ContactForm to the corresponding properties in Contact.
         contactBinder.bindInstanceFields(this);
-        company.setItems(companies);
+        /**
+         * The combo boxes read from the application wide reference data snapshot, shared by all sessions.
+         * Companies are fetched lazily, one filtered window at a time, so the form never holds the full list.
+         */
+        company.setItems(query -> referenceData.current()
+                .findCompanies(query.getFilter().orElse(""), query.getOffset(), query.getLimit()));
         company.setItemLabelGenerator(Company::getName);
-        status.setItems(statuses);
+        status.setItems(referenceData.current().statuses());
         status.setItemLabelGenerator(Status::getName);
         /**
          * Adds all the UI components to the layout.
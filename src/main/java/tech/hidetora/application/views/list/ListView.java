@@ -1,47 +1,148 @@
 package tech.hidetora.application.views.list;
 
+import com.vaadin.flow.component.AttachEvent;
 import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.button.ButtonVariant;
+import com.vaadin.flow.component.combobox.ComboBox;
+import com.vaadin.flow.component.confirmdialog.ConfirmDialog;
 import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.html.Anchor;
+import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.icon.Icon;
 import com.vaadin.flow.component.icon.VaadinIcon;
+import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.progressbar.ProgressBar;
 import com.vaadin.flow.component.textfield.TextField;
+import com.vaadin.flow.data.provider.ConfigurableFilterDataProvider;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.data.provider.SortDirection;
 import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.server.StreamResource;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.shared.Registration;
 import jakarta.annotation.security.PermitAll;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import tech.hidetora.application.config.SessionFootprintAnalyzer;
+import tech.hidetora.application.data.entity.Company;
 import tech.hidetora.application.data.entity.Contact;
+import tech.hidetora.application.data.entity.Status;
+import tech.hidetora.application.data.projection.ContactRow;
+import tech.hidetora.application.data.service.AsyncCrmService;
+import tech.hidetora.application.data.service.ContactChangeBroadcaster;
+import tech.hidetora.application.data.service.ContactExportService;
 import tech.hidetora.application.data.service.CrmService;
+import tech.hidetora.application.data.service.ReferenceDataService;
+import tech.hidetora.application.views.LeanModeAware;
 import tech.hidetora.application.views.MainLayout;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToIntFunction;
+
 @PermitAll
 @PageTitle("Contacts | Vaadin CRM")
 @Route(value="", layout = MainLayout.class)
 @Slf4j
-public class ListView extends VerticalLayout { // The view extends VerticalLayout, which places all child components vertically.
-    Grid<Contact> grid = new Grid<>(Contact.class); // The Grid component is typed with Contact.
+public class ListView extends VerticalLayout implements LeanModeAware { // The view extends VerticalLayout, which places all child components vertically.
+    // Rows per grid request in lean mode, the grid keeps a few requests' worth of rows in the session.
+    private static final int LEAN_PAGE_SIZE = 20;
+
+    Grid<ContactRow> grid = new Grid<>(); // The Grid component is typed with the ContactRow projection.
     TextField filterText = new TextField();
     ContactForm form; // Creates a reference to the form, so you have access to it from other methods.
     CrmService service; // Creates a reference to the service, so you have access to it from other methods.
+    AsyncCrmService asyncService; // The queries of the service on a background thread.
+    ReferenceDataService referenceData; // Companies and statuses shared by all sessions.
+    ContactDataProvider contactDataProvider;
+    ConfigurableFilterDataProvider<ContactRow, Void, String> dataProvider; // Fetches the visible rows of the grid on demand.
+    ContactChangeBroadcaster broadcaster; // Tells the view about contacts changed by any user.
+    Registration changeRegistration;
+    ContactExportService exportService; // Streams the filtered contacts to a download.
+    // The filter of the grid, read by downloads which run outside the session lock.
+    volatile String exportFilter;
+    HorizontalLayout bulkActions = new HorizontalLayout(); // Shown while contacts are selected.
+    Span selectionCount = new Span();
+    // Async mode: searches run in the background while the UI stays responsive.
+    boolean asyncLoading;
+    ProgressBar loadingIndicator = new ProgressBar();
+    List<CompletableFuture<?>> runningSearch = List.of();
+    long searchGeneration; // Identifies the latest search, results of older ones are dropped.
+    String appliedFilter; // The (lower case) filter of the latest search, searches are case insensitive.
 
-    public ListView(CrmService service) { // Autowire CrmService through the constructor. Save it in a field, so you can access it from other methods.
+    public ListView(CrmService service, AsyncCrmService asyncService, ReferenceDataService referenceData,
+                    ContactChangeBroadcaster broadcaster, ContactExportService exportService,
+                    @Value("${crm.list.async-loading:true}") boolean asyncLoading,
+                    @Value("${crm.list.filter-debounce:PT0.4S}") Duration filterDebounce) { // Autowire CrmService through the constructor. Save it in a field, so you can access it from other methods.
 
         this.service = service;
+        this.asyncService = asyncService;
+        this.referenceData = referenceData;
+        this.broadcaster = broadcaster;
+        this.exportService = exportService;
+        this.asyncLoading = asyncLoading;
+        this.contactDataProvider = new ContactDataProvider(service);
+        this.dataProvider = contactDataProvider.withConfigurableFilter();
         addClassName("list-view");
         // The grid configuration is extracted to a separate method to keep the constructor easier to read.
         configureGrid();
+        filterText.setValueChangeTimeout((int) filterDebounce.toMillis());
         // Create a method for initializing the form.
         configureForm();
         setSizeFull();
         // Add the toolbar and grid to the VerticalLayout.
-        add(createToolBar(), getContent());
+        add(createToolBar(), createBulkActions(), getContent());
+        if (SessionFootprintAnalyzer.isLeanMode(VaadinSession.getCurrent())) {
+            enterLeanMode();
+        }
         updateList();
         closeEditor();
     }
 
+    /**
+     * While the view is shown, contact changes made by any user are pushed to the grid.
+     * Updated contacts only refresh their own row, created and deleted ones reload the visible page.
+     */
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        UI ui = attachEvent.getUI();
+        changeRegistration = broadcaster.register(batch -> ui.access(() -> {
+            if (batch.structural()) {
+                dataProvider.refreshAll();
+            } else {
+                batch.updatedRows().values().forEach(dataProvider::refreshItem);
+            }
+        }));
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        changeRegistration.remove();
+        changeRegistration = null;
+        cancelRunningSearch();
+    }
+
+    /**
+     * The session got too large: the grid holds fewer rows and the data provider fewer cursors.
+     */
+    @Override
+    public void enterLeanMode() {
+        grid.setPageSize(LEAN_PAGE_SIZE);
+        contactDataProvider.enterLeanMode();
+    }
+
     private void closeEditor() {
         form.setContact(null);
         form.setVisible(false);
@@ -51,15 +152,23 @@ public class ListView extends VerticalLayout { // The view extends VerticalLayou
     public void configureGrid() {
         addClassName("contact-grid");
         grid.setSizeFull();
-        // Define which properties of Contact the grid should show.
-        grid.setColumns("firstName", "lastName", "email");
-        grid.addColumn(contact -> contact.getStatus().getName()).setHeader("Status");
-        // Define custom columns for nested objects.
-        grid.addColumn(contact -> contact.getCompany().getName()).setHeader("Company");
+        // Define which properties of ContactRow the grid should show.
+        // The sort property is the JPA path used in the order by clause, so sorting happens in the database.
+        grid.addColumn(ContactRow::firstName).setHeader("First Name").setSortProperty("firstName");
+        grid.addColumn(ContactRow::lastName).setHeader("Last Name").setSortProperty("lastName");
+        grid.addColumn(ContactRow::email).setHeader("Email").setSortProperty("email");
+        // The status and company names are already part of the row, no entities are loaded for them.
+        grid.addColumn(ContactRow::statusName).setHeader("Status").setSortProperty("status.name");
+        grid.addColumn(ContactRow::companyName).setHeader("Company").setSortProperty("company.name");
         // Configure the columns to adjust automatically their size to fit their content.
         grid.getColumns().forEach(col -> col.setAutoWidth(true));
 
-        grid.asSingleSelect().addValueChangeListener(event -> editContact(event.getValue()));
+        // Check boxes select contacts for the bulk actions, clicking a row opens it in the form.
+        grid.setSelectionMode(Grid.SelectionMode.MULTI);
+        grid.addSelectionListener(event -> updateBulkActions(event.getAllSelectedItems()));
+        grid.addItemClickListener(event -> editRow(event.getItem()));
+        // The grid fetches pages lazily from the data provider instead of holding every contact.
+        grid.setItems(dataProvider);
     }
 
     private Component getContent() {
@@ -77,6 +186,7 @@ public class ListView extends VerticalLayout { // The view extends VerticalLayou
         /**
          * Configure the search field to fire value-change events only when the user stops typing.
          * This way you avoid unnecessary database calls,but the listener is still fired without the user leaving the focus from the field.
+         * The pause is set by crm.list.filter-debounce.
          **/
         filterText.setValueChangeMode(ValueChangeMode.LAZY);
         filterText.addValueChangeListener(e -> updateList()); // Call updateList() any time the filter changes.
@@ -89,27 +199,173 @@ public class ListView extends VerticalLayout { // The view extends VerticalLayou
         addContactButton.addClassName("hover");
         addContactButton.addClickListener(click -> addContact());
 
-        // The toolbar uses a HorizontalLayout to place the TextField and Button next to each other.
-        var toolBar = new HorizontalLayout(filterText, addContactButton);
+        loadingIndicator.setIndeterminate(true);
+        loadingIndicator.setWidth("6em");
+        loadingIndicator.setVisible(false);
+
+        // The toolbar uses a HorizontalLayout to place the TextField and Buttons next to each other.
+        var toolBar = new HorizontalLayout(filterText, loadingIndicator, addContactButton,
+                createExportLink(ContactExportService.Format.CSV, "Export CSV"),
+                createExportLink(ContactExportService.Format.NDJSON, "Export JSON"));
+        toolBar.setDefaultVerticalComponentAlignment(Alignment.CENTER);
         // Adding some class names to components makes it easier to style the application later using CSS.
         toolBar.addClassName("toolbar");
         return  toolBar;
     }
 
-    // Initialize the form with empty company and status lists: you’ll add these on the next part.
+    /**
+     * Bulk actions change all selected contacts with a single set-based update per thousand contacts,
+     * instead of loading and saving them one by one.
+     * */
+    private HorizontalLayout createBulkActions() {
+        ComboBox<Status> bulkStatus = new ComboBox<>();
+        bulkStatus.setPlaceholder("Set status ...");
+        bulkStatus.setItems(referenceData.current().statuses());
+        bulkStatus.setItemLabelGenerator(Status::getName);
+        bulkStatus.addValueChangeListener(event -> {
+            if (event.getValue() != null) {
+                applyToSelection(ids -> service.updateStatus(ids, event.getValue()), "updated");
+                bulkStatus.clear();
+            }
+        });
+
+        ComboBox<Company> bulkCompany = new ComboBox<>();
+        bulkCompany.setPlaceholder("Move to company ...");
+        bulkCompany.setItems(query -> referenceData.current()
+                .findCompanies(query.getFilter().orElse(""), query.getOffset(), query.getLimit()));
+        bulkCompany.setItemLabelGenerator(Company::getName);
+        bulkCompany.addValueChangeListener(event -> {
+            if (event.getValue() != null) {
+                applyToSelection(ids -> service.reassignCompany(ids, event.getValue()), "moved");
+                bulkCompany.clear();
+            }
+        });
+
+        Button deleteSelected = new Button("Delete selected", new Icon(VaadinIcon.TRASH));
+        deleteSelected.addThemeVariants(ButtonVariant.LUMO_ERROR);
+        deleteSelected.addClickListener(click -> {
+            ConfirmDialog confirm = new ConfirmDialog("Delete contacts",
+                    "Delete the " + grid.getSelectedItems().size() + " selected contacts?",
+                    "Delete", event -> applyToSelection(service::deleteContacts, "deleted"));
+            confirm.setCancelable(true);
+            confirm.setConfirmButtonTheme("error primary");
+            confirm.open();
+        });
+
+        bulkActions.add(selectionCount, bulkStatus, bulkCompany, deleteSelected);
+        bulkActions.setDefaultVerticalComponentAlignment(Alignment.CENTER);
+        bulkActions.addClassName("bulk-actions");
+        bulkActions.setVisible(false);
+        return bulkActions;
+    }
+
+    private void updateBulkActions(Set<ContactRow> selected) {
+        selectionCount.setText(selected.size() + " selected");
+        bulkActions.setVisible(!selected.isEmpty());
+    }
+
+    // The grid is refreshed by the pushed change, like the grids of all other users.
+    private void applyToSelection(ToIntFunction<List<Long>> action, String verb) {
+        List<Long> ids = grid.getSelectedItems().stream().map(ContactRow::id).toList();
+        int changed = action.applyAsInt(ids);
+        grid.deselectAll();
+        closeEditor();
+        Notification.show(changed + " contacts " + verb);
+    }
+
+    /**
+     * The download writes the contacts matching the filter straight to the response while they are read,
+     * so exporting a few million contacts needs no more memory than exporting a few.
+     * */
+    private Anchor createExportLink(ContactExportService.Format format, String text) {
+        StreamResource resource = new StreamResource("contacts." + format.getExtension(),
+                (out, session) -> exportService.export(exportFilter, format, out));
+        resource.setContentType(format.getContentType());
+        Anchor link = new Anchor(resource, text);
+        link.getElement().setAttribute("download", true);
+        return link;
+    }
+
+    // Initialize the form with the shared companies and statuses.
     private void configureForm() {
-        // Use the service to fetch the companies and statuses from the database.
-        form = new ContactForm(service.findAllCompanies(), service.findAllStatuses());
+        form = new ContactForm(referenceData);
         form.setWidth("25em");
         form.addSaveListener(this::saveContact);
         form.addDeleteListener(this::deleteContact);
         form.addCloseListener(e -> closeEditor());
     }
 
-    // updateList() sets the grid items by calling the service with the value from the filter text field.
+    // updateList() passes the value from the filter text field to the data provider, which refreshes the grid.
     private void updateList() {
-        System.out.println("Filter text: " + filterText.getValue());
-        grid.setItems(service.findAllContacts(filterText.getValue()));
+        log.debug("Filter text: {}", filterText.getValue());
+        String normalized = filterText.getValue().toLowerCase(Locale.ROOT);
+        if (normalized.equals(appliedFilter)) {
+            return; // Only the case changed (or the user typed and deleted), the grid already shows the result.
+        }
+        appliedFilter = normalized;
+        exportFilter = filterText.getValue();
+        if (asyncLoading) {
+            searchInBackground(filterText.getValue());
+        } else {
+            dataProvider.setFilter(filterText.getValue());
+        }
+    }
+
+    /**
+     * Runs the count and the first page of the search on a background thread and hands them to the grid
+     * once both are done, so the session isn't locked while the database works.
+     * Typing again cancels the running search, a superseded result is never shown.
+     * */
+    private void searchInBackground(String filter) {
+        cancelRunningSearch();
+        long generation = ++searchGeneration;
+        List<QuerySortOrder> sortOrders = grid.getSortOrder().stream()
+                .flatMap(order -> order.getSorted().getSortOrder(order.getDirection()))
+                .toList();
+        CompletableFuture<List<ContactRow>> rows = asyncService.findContactRows(filter,
+                PageRequest.of(0, grid.getPageSize(), toSort(filter, sortOrders)));
+        CompletableFuture<Long> count = asyncService.countContacts(filter);
+        runningSearch = List.of(rows, count);
+        loadingIndicator.setVisible(true);
+
+        UI ui = UI.getCurrent();
+        rows.thenCombine(count, (page, size) -> new ContactDataProvider.Prefetch(filter, sortOrders, page, size))
+                .whenComplete((prefetch, failure) -> ui.access(() -> {
+                    if (generation != searchGeneration) {
+                        return; // The user typed again in the meantime.
+                    }
+                    loadingIndicator.setVisible(false);
+                    runningSearch = List.of();
+                    dataProvider.setFilter(filter);
+                    if (failure == null) {
+                        contactDataProvider.usePrefetched(prefetch);
+                    } else {
+                        // The grid runs the query itself instead.
+                        log.warn("Background search for '{}' failed", filter, failure);
+                    }
+                }));
+    }
+
+    private void cancelRunningSearch() {
+        runningSearch.forEach(search -> search.cancel(true));
+        runningSearch = List.of();
+    }
+
+    // The Spring Data sort of the grid's sort orders. Unsorted lists are in keyset order, like ContactDataProvider.
+    private static Sort toSort(String filter, List<QuerySortOrder> sortOrders) {
+        if (sortOrders.isEmpty()) {
+            return filter == null || filter.isEmpty() ? CrmService.KEYSET_SORT : Sort.unsorted();
+        }
+        return Sort.by(sortOrders.stream()
+                .map(order -> order.getDirection() == SortDirection.ASCENDING
+                        ? Sort.Order.asc(order.getSorted())
+                        : Sort.Order.desc(order.getSorted()))
+                .toList());
+    }
+
+    // The row only has what the grid shows, the form edits the full entity.
+    private void editRow(ContactRow row) {
+        editContact(row == null ? null : service.findContact(row.id()).orElse(null));
     }
 
     public void editContact(Contact contact) {
@@ -123,19 +379,18 @@ public class ListView extends VerticalLayout { // The view extends VerticalLayou
     }
 
     private void addContact() {
-        grid.asSingleSelect().clear();
+        grid.deselectAll();
         editContact(new Contact());
     }
 
+    // The grid is refreshed by the pushed change, like the grids of all other users.
     private void saveContact(ContactForm.SaveEvent event) {
         service.saveContact(event.getContact());
-        updateList();
         closeEditor();
     }
 
     private void deleteContact(ContactForm.DeleteEvent event) {
         service.deleteContact(event.getContact());
-        updateList();
         closeEditor();
     }
 }
@@ -61,4 +61,5 @@ INSERT INTO "CONTACT" (ID, VERSION, EMAIL,FIRST_NAME,LAST_NAME,COMPANY_ID,STATUS
 (57, 1, 'mattie.graham@ispaviw.gt', 'Mattie', 'Graham', 7, 2),
 (58, 1, 'bryan.shaw@ha.ee', 'Bryan', 'Shaw', 9, 1),
 (59, 1, 'essie.adams@iliat.cw', 'Essie', 'Adams', 8, 5),
-(60, 1, 'gary.osborne@do.ga', 'Gary', 'Osborne', 7, 5);
\ No newline at end of file
+(60, 1, 'gary.osborne@do.ga', 'Gary', 'Osborne', 7, 5);
+INSERT INTO "COMPANY_COUNTER" (COMPANY_ID, EMPLOYEE_COUNT) SELECT co.ID, (SELECT COUNT(*) FROM "CONTACT" c WHERE c.COMPANY_ID = co.ID) FROM "COMPANY" co;
\ No newline at end of file
@@ -0,0 +1,48 @@
+-- The schema of the entities, for databases that are not created by Hibernate (see application-prod.properties).
+-- Plain SQL that runs on H2 and PostgreSQL.
+
+-- Hibernate's pooled optimizer takes 50 ids per call, see AbstractEntity. Ids below 1000 are left for demo data.
+create sequence idgenerator start with 1000 increment by 50;
+
+create table status (
+    id bigint not null primary key,
+    version integer not null,
+    name varchar(255)
+);
+
+create table company (
+    id bigint not null primary key,
+    version integer not null,
+    name varchar(255),
+    employee_count integer default 0 not null
+);
+
+create table contact (
+    id bigint not null primary key,
+    version integer not null,
+    first_name varchar(255),
+    last_name varchar(255),
+    email varchar(255),
+    company_id bigint not null references company (id),
+    status_id bigint not null references status (id)
+);
+
+-- The search index, see ContactSearchIndex. The primary key starts with contact_id, which serves the deletes by contact.
+create table contact_trigram (
+    contact_id bigint not null,
+    field varchar(1) not null,
+    trigram varchar(3) not null,
+    weight integer not null,
+    primary key (contact_id, field, trigram)
+);
+
+-- Keyset pagination in (last_name, first_name, id) order, also serves lookups and sorts by last name.
+create index idx_contact_keyset on contact (last_name, first_name, id);
+-- Foreign keys: employee counts, moving contacts between companies and deleting companies or statuses.
+create index idx_contact_company on contact (company_id);
+create index idx_contact_status on contact (status_id);
+-- Sorting the grid by first name or email.
+create index idx_contact_first_name on contact (first_name);
+create index idx_contact_email on contact (email);
+-- Looking up the trigrams of a search term.
+create index idx_contact_trigram_gram on contact_trigram (trigram, contact_id);
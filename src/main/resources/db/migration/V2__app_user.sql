@@ -0,0 +1,9 @@
+-- The users who can log in, see AppUser. Demo users are created on startup while the table is empty.
+create table app_user (
+    id bigint not null primary key,
+    version integer not null,
+    username varchar(100) not null unique,
+    password varchar(255) not null,
+    roles varchar(255) not null,
+    enabled boolean not null
+);
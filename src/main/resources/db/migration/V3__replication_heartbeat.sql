@@ -0,0 +1,5 @@
+-- One row, rewritten on the primary every few seconds when replicas are configured, see ReplicaRoutingDataSource.
+create table replication_heartbeat (
+    id bigint not null primary key,
+    beat_millis bigint not null
+);
@@ -0,0 +1,9 @@
+-- The employee counters move out of the company table into a table of their own, see CompanyCounter.
+-- Company rows are in the second-level cache, and every counter update evicted all of them.
+-- Plain SQL that runs on H2 and PostgreSQL.
+create table company_counter (
+    company_id bigint not null primary key references company (id),
+    employee_count integer default 0 not null
+);
+insert into company_counter (company_id, employee_count) select id, employee_count from company;
+alter table company drop column employee_count;
@@ -0,0 +1,10 @@
+-- Turns a new database into shard ${shard} of ${shardCount}, see ShardDataSourceConfig. Runs after the schema and the
+-- demo data (when they are loaded), which every shard gets in full: the contacts of the companies of the other shards
+-- are deleted, the statuses and companies stay as reference data. Plain SQL that runs on H2 and PostgreSQL.
+delete from contact_trigram where contact_id in (select id from contact where mod(company_id, ${shardCount}) <> ${shard});
+delete from contact where mod(company_id, ${shardCount}) <> ${shard};
+-- Every shard counts the contacts it holds: the employee count of a company is kept on its shard, it is 0 on the
+-- others. Runs after V4, which created company_counter.
+update company_counter cc set employee_count = (select count(*) from contact c where c.company_id = cc.company_id);
+-- Every shard hands out ids from a range of its own, so contact ids stay unique across the shards.
+alter sequence idgenerator restart with ${idBase};
@@ -0,0 +1,5 @@
+-- Results of several shards are merged in memory (see ContactShardingAspect), by comparing the code points of the
+-- texts. Without a collation H2 compares texts like String.compareTo, by UTF-16 unit, which is the code point order
+-- as long as the texts have no characters above U+FFFF. Nothing to change, a collation can't be set on a database
+-- with tables anyway.
+select 1;
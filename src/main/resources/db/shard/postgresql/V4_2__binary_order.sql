@@ -0,0 +1,15 @@
+-- Results of several shards are merged in memory (see ContactShardingAspect), by comparing the code points of the
+-- texts. The shards must sort the same way: the columns contacts are sorted by get a collation ordering by code
+-- point, instead of the language rules of the database locale. pg_c_utf8 (PostgreSQL 17) keeps the Unicode case
+-- mapping of lower(), which the searches use; before 17, C only lowercases ASCII letters.
+do $$
+declare
+    binary_order text := case when current_setting('server_version_num')::int >= 170000 then 'pg_c_utf8' else 'C' end;
+begin
+    execute format('alter table contact alter column first_name type varchar(255) collate %1$I, '
+                       || 'alter column last_name type varchar(255) collate %1$I, '
+                       || 'alter column email type varchar(255) collate %1$I', binary_order);
+    execute format('alter table company alter column name type varchar(255) collate %I', binary_order);
+    execute format('alter table status alter column name type varchar(255) collate %I', binary_order);
+end
+$$;
@@ -0,0 +1,73 @@
+package tech.hidetora.application.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import tech.hidetora.application.data.repository.ContactRepository;
+import tech.hidetora.application.data.service.AsyncCrmService;
+import tech.hidetora.application.data.service.CrmService;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * The queries of the contact grid, in the foreground and in the background, must be served by a replica.
+ * The data source each of them would use is recorded when the query reaches the repository.
+ * Runs with the replicas profile, whose replica is a second connection pool to the in-memory database.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("replicas")
+class ReplicaRoutingDataSourceTest {
+    private static final PageRequest GRID_PAGE = PageRequest.of(0, 50, CrmService.KEYSET_SORT);
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+    @Autowired
+    private CrmService crmService;
+    @Autowired
+    private AsyncCrmService asyncCrmService;
+    @SpyBean
+    private ContactRepository contactRepository;
+
+    private final List<Object> lookupKeys = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // Replicas get reads once their heartbeat was read, don't wait for the scheduled one.
+        routingDataSource.heartbeat();
+        doAnswer(invocation -> {
+            lookupKeys.add(routingDataSource.determineCurrentLookupKey());
+            return invocation.callRealMethod();
+        }).when(contactRepository).findRows(any());
+        doAnswer(invocation -> {
+            lookupKeys.add(routingDataSource.determineCurrentLookupKey());
+            return invocation.callRealMethod();
+        }).when(contactRepository).count();
+    }
+
+    @Test
+    void gridPage() {
+        assertThat(crmService.findContactRowsAfter(null, GRID_PAGE.getPageSize())).isNotEmpty();
+        assertThat(crmService.countContacts(null)).isPositive();
+        assertServedByReplica();
+    }
+
+    @Test
+    void backgroundSearch() {
+        assertThat(asyncCrmService.findContactRows(null, GRID_PAGE).join()).isNotEmpty();
+        assertThat(asyncCrmService.countContacts(null).join()).isPositive();
+        assertServedByReplica();
+    }
+
+    private void assertServedByReplica() {
+        assertThat(lookupKeys).hasSize(2).allSatisfy(key -> assertThat(key).asString().startsWith("replica-"));
+    }
+}
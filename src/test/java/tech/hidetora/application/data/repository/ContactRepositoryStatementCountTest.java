@@ -0,0 +1,164 @@
+package tech.hidetora.application.data.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.hidetora.application.config.ReferenceDataCacheConfig;
+import tech.hidetora.application.data.entity.CompanyCounter;
+import tech.hidetora.application.data.entity.Contact;
+import tech.hidetora.application.data.projection.ContactRow;
+import tech.hidetora.application.data.service.ContactSearchIndex;
+import tech.hidetora.application.data.service.CrmService;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Every page of the contact grid, sorted, searched or not, must cost a single SQL statement,
+ * with the company and status of every contact included. Counted with the Hibernate statistics,
+ * on the demo data of data.sql.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics = true")
+@Import({ContactSearchIndex.class, ReferenceDataCacheConfig.class})
+// No test transaction: every call gets a persistence context of its own, like the calls of the grid.
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ContactRepositoryStatementCountTest {
+    private static final Pageable GRID_PAGE = PageRequest.of(1, 20, CrmService.KEYSET_SORT);
+    private static final String LIKE_TERM = "ar";
+    private static final String INDEXED_TERM = "mar";
+
+    @Autowired
+    private ContactRepository contactRepository;
+    @Autowired
+    private CompanyRepository companyRepository;
+    @Autowired
+    private CompanyCounterRepository counterRepository;
+    @Autowired
+    private ContactTrigramRepository trigramRepository;
+    @Autowired
+    private ContactSearchIndex searchIndex;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        if (trigramRepository.count() == 0) {
+            searchIndex.rebuild();
+        }
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        // Companies and statuses must be loaded from the database, not from the second-level cache.
+        sessionFactory.getCache().evictAllRegions();
+        statistics = sessionFactory.getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void rowPage() {
+        assertRows(contactRepository.findRows(GRID_PAGE));
+        assertOneStatement();
+    }
+
+    @Test
+    void rowPageAfterCursor() {
+        assertRows(contactRepository.findRowsAfter("G", "", 0L, PageRequest.ofSize(20)));
+        assertOneStatement();
+    }
+
+    @Test
+    void rowSearch() {
+        assertRows(contactRepository.searchRows(LIKE_TERM, PageRequest.of(0, 20, CrmService.KEYSET_SORT)));
+        assertOneStatement();
+    }
+
+    @Test
+    void indexedRowSearch() {
+        Set<String> trigrams = Set.of(INDEXED_TERM);
+        assertRows(contactRepository.searchIndexedRows(INDEXED_TERM, trigrams, trigrams.size(),
+                PageRequest.of(0, 20, CrmService.KEYSET_SORT)));
+        assertOneStatement();
+    }
+
+    @Test
+    void entityPage() {
+        assertContacts(contactRepository.findPage(GRID_PAGE));
+        assertOneStatement();
+    }
+
+    @Test
+    void entityPageAfterCursor() {
+        assertContacts(contactRepository.findPageAfter("G", "", 0L, PageRequest.ofSize(20)));
+        assertOneStatement();
+    }
+
+    @Test
+    void entitySearch() {
+        assertContacts(contactRepository.search(LIKE_TERM, PageRequest.of(0, 20, CrmService.KEYSET_SORT)));
+        assertOneStatement();
+    }
+
+    @Test
+    void indexedEntitySearch() {
+        Set<String> trigrams = Set.of(INDEXED_TERM);
+        assertContacts(contactRepository.searchIndexed(INDEXED_TERM, trigrams, trigrams.size(),
+                PageRequest.of(0, 20, CrmService.KEYSET_SORT)));
+        assertOneStatement();
+    }
+
+    @Test
+    void companies() {
+        assertThat(companyRepository.findAll()).isNotEmpty();
+        assertOneStatement();
+    }
+
+    @Test
+    void employeeCounts() {
+        List<CompanyCounter> counters = counterRepository.findAll();
+        assertThat(counters.stream().mapToInt(CompanyCounter::getEmployeeCount).sum()).isPositive();
+        assertOneStatement();
+    }
+
+    // Counting a contact must not evict the cached companies.
+    @Test
+    void employeeCountUpdateKeepsCompaniesCached() {
+        Long companyId = companyRepository.findAll().get(0).getId();
+        transactionTemplate.executeWithoutResult(status -> counterRepository.adjustEmployeeCount(companyId, 0));
+        statistics.clear();
+        assertThat(companyRepository.findAll()).isNotEmpty();
+        assertThat(statistics.getPrepareStatementCount()).as("SQL statements").isZero();
+    }
+
+    private static void assertRows(List<ContactRow> rows) {
+        assertThat(rows).isNotEmpty().allSatisfy(row -> {
+            assertThat(row.companyName()).isNotNull();
+            assertThat(row.statusName()).isNotNull();
+        });
+    }
+
+    // Reads what the grid and the forms read, after the persistence context of the query is closed.
+    private static void assertContacts(List<Contact> contacts) {
+        assertThat(contacts).isNotEmpty().allSatisfy(contact -> {
+            assertThat(contact.getCompany().getName()).isNotNull();
+            assertThat(contact.getStatus().getName()).isNotNull();
+        });
+    }
+
+    private void assertOneStatement() {
+        assertThat(statistics.getPrepareStatementCount()).as("SQL statements").isEqualTo(1);
+    }
+}